@@ -0,0 +1,96 @@
+package com.skillstorm.cloudlodge.configs;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+@Configuration
+public class AsyncConfig {
+
+    // Bounded pool for fanning out independent parts of a request (dashboard sections).
+    // Java 17 has no virtual threads, so keep the pool small. Work that does not fit is rejected rather than run
+    // by the caller: on the request thread it would ignore the per-section timeout. DashboardController lists a
+    // rejected section as timed out.
+    @Bean(name = "dashboardExecutor")
+    public ThreadPoolTaskExecutor dashboardExecutor(
+            @Value("${app.dashboard.poolSize:8}") int poolSize,
+            @Value("${app.dashboard.queueCapacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("dashboard-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setTaskDecorator(securityContextDecorator());
+        executor.initialize();
+        return executor;
+    }
+
+    // Whole-file uploads running side by side when one request carries several images.
+    // A full queue rejects the upload (the request answers 503) instead of piling up files in memory.
+    @Bean(name = "s3UploadExecutor")
+    public ThreadPoolTaskExecutor s3UploadExecutor(
+            @Value("${app.s3.uploadConcurrency:4}") int concurrency,
+            @Value("${app.s3.uploadQueueCapacity:50}") int queueCapacity) {
+        return fixedPool("s3-upload-", concurrency, queueCapacity, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Multipart part uploads; a separate pool so a file waiting on its parts never starves them.
+    // Only upload threads submit here, so when the queue is full the upload thread sends the part itself.
+    @Bean(name = "s3PartExecutor")
+    public ThreadPoolTaskExecutor s3PartExecutor(
+            @Value("${app.s3.partPoolSize:8}") int poolSize,
+            @Value("${app.s3.partQueueCapacity:32}") int queueCapacity) {
+        return fixedPool("s3-part-", poolSize, queueCapacity, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // Background resizing of uploaded images; rejects work when the queue is full instead of blocking uploads
+    @Bean(name = "imageExecutor")
+    public ThreadPoolTaskExecutor imageExecutor(
+            @Value("${app.images.poolSize:2}") int poolSize,
+            @Value("${app.images.queueCapacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("image-");
+        executor.initialize();
+        return executor;
+    }
+
+    private static ThreadPoolTaskExecutor fixedPool(String namePrefix, int size, int queueCapacity,
+                                                    RejectedExecutionHandler rejectionPolicy) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(namePrefix);
+        executor.setRejectedExecutionHandler(rejectionPolicy);
+        executor.initialize();
+        return executor;
+    }
+
+    // Carry the logged in user over to the worker thread. The request scope is deliberately not carried:
+    // a task that outlives its request (a timed out dashboard section) would use request beans after the request ended.
+    private static TaskDecorator securityContextDecorator() {
+        return task -> {
+            SecurityContext securityContext = SecurityContextHolder.getContext();
+            return () -> {
+                SecurityContext previousContext = SecurityContextHolder.getContext();
+                try {
+                    SecurityContextHolder.setContext(securityContext);
+                    task.run();
+                } finally {
+                    SecurityContextHolder.setContext(previousContext);
+                }
+            };
+        };
+    }
+}
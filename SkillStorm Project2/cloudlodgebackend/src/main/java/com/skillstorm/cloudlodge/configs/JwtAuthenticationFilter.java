@@ -11,8 +11,9 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
-import com.skillstorm.cloudlodge.models.User;
-import com.skillstorm.cloudlodge.repositories.UserRepository;
+import com.skillstorm.cloudlodge.models.UserPrincipal;
+import com.skillstorm.cloudlodge.services.PrincipalCache;
+import com.skillstorm.cloudlodge.utils.JwtClaims;
 import com.skillstorm.cloudlodge.utils.JwtUtils;
 
 import jakarta.servlet.FilterChain;
@@ -24,10 +25,10 @@ import jakarta.servlet.http.HttpServletResponse;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtils jwtUtils;
-    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
-    public JwtAuthenticationFilter(UserRepository userRepository, JwtUtils jwtUtils) {
-        this.userRepository = userRepository;
+    public JwtAuthenticationFilter(PrincipalCache principalCache, JwtUtils jwtUtils) {
+        this.principalCache = principalCache;
         this.jwtUtils = jwtUtils;
     }
 
@@ -42,14 +43,15 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String jwtToken = authHeader.substring(7);
 
-            if (jwtUtils.validateJwtToken(jwtToken)) {
-                String userId = jwtUtils.getUserIdFromJwt(jwtToken);
-                String roleFromJwt = jwtUtils.getRoleFromJwt(jwtToken);
+            JwtClaims claims = jwtUtils.parseToken(jwtToken).orElse(null);
+            if (claims != null) {
+                String userId = claims.getUserId();
+                String roleFromJwt = claims.getRole();
 
                 if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                    User user = userRepository.findById(userId).orElse(null);
+                    UserPrincipal user = principalCache.get(userId).orElse(null);
 
-                    if (user != null) {
+                    if (user != null && roleFromJwt != null) {
                         String role = "ROLE_" + roleFromJwt.toUpperCase();
                         List<SimpleGrantedAuthority> authorities = List.of(new SimpleGrantedAuthority(role));
 
@@ -0,0 +1,166 @@
+package com.skillstorm.cloudlodge.configs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.stereotype.Component;
+
+// Spring Data does not auto-create indexes by default, so create the ones declared
+// on the models (@Indexed, @CompoundIndex) once the app is up, then check what is really there:
+//  - declared indexes that are still missing (creation failed, ex: duplicates for a unique index)
+//  - indexes in the database that no model declares
+//  - indexes with no recorded use ($indexStats, skipped when the server does not support it)
+// Only plain single/compound, unique and sparse options are declared so the same models work on DocumentDB.
+// A declared unique index that is missing (or not unique) stops startup: bookings (roomUnit_date_unique),
+// payments and user emails rely on those indexes to reject duplicates, and without them writes would go through.
+@Component
+public class MongoIndexInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexInitializer.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.mongo.indexReport:true}")
+    private boolean indexReport;
+
+    public MongoIndexInitializer(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext =
+                mongoTemplate.getConverter().getMappingContext();
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        List<String> missingUnique = new ArrayList<>();
+
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (!entity.isAnnotationPresent(org.springframework.data.mongodb.core.mapping.Document.class)) continue;
+
+            IndexOperations indexOps = mongoTemplate.indexOps(entity.getType());
+            List<IndexDefinition> declared = new ArrayList<>();
+            for (IndexDefinition index : resolver.resolveIndexFor(entity.getType())) {
+                declared.add(index);
+                try {
+                    indexOps.createIndex(index);
+                } catch (Exception e) {
+                    log.warn("Could not create index {} on {}", index.getIndexKeys(), entity.getCollection(), e);
+                }
+            }
+
+            List<IndexInfo> existing = indexOps.getIndexInfo();
+            missingUnique.addAll(missingUnique(entity.getCollection(), declared, existing));
+            if (indexReport) {
+                try {
+                    report(entity.getCollection(), declared, existing);
+                } catch (Exception e) {
+                    log.warn("Could not check indexes on {}", entity.getCollection(), e);
+                }
+            }
+        }
+
+        if (!missingUnique.isEmpty()) {
+            throw new IllegalStateException("Declared unique indexes are missing, remove the duplicates and restart: "
+                    + String.join("; ", missingUnique));
+        }
+    }
+
+    // Declared unique indexes with no unique index on the same keys in the database
+    private static List<String> missingUnique(String collection, List<IndexDefinition> declared, List<IndexInfo> existing) {
+        Set<String> uniqueKeys = new HashSet<>();
+        for (IndexInfo info : existing) {
+            if (info.isUnique()) uniqueKeys.add(keyPattern(info));
+        }
+        List<String> missing = new ArrayList<>();
+        for (IndexDefinition index : declared) {
+            if (!Boolean.TRUE.equals(index.getIndexOptions().get("unique"))) continue;
+            String keys = keyPattern(index.getIndexKeys());
+            if (!uniqueKeys.contains(keys)) missing.add(keys + " on " + collection);
+        }
+        return missing;
+    }
+
+    private void report(String collection, List<IndexDefinition> declared, List<IndexInfo> existing) {
+        Map<String, IndexInfo> existingByKeys = new HashMap<>();
+        for (IndexInfo info : existing) {
+            existingByKeys.put(keyPattern(info), info);
+        }
+
+        Set<String> declaredKeys = new HashSet<>();
+        for (IndexDefinition index : declared) {
+            String keys = keyPattern(index.getIndexKeys());
+            declaredKeys.add(keys);
+            IndexInfo found = existingByKeys.get(keys);
+            if (found == null) {
+                log.warn("Missing index {} on {}: queries on it will scan the collection", keys, collection);
+            } else if (Boolean.TRUE.equals(index.getIndexOptions().get("unique")) && !found.isUnique()) {
+                log.warn("Index {} on {} exists but is not unique as declared", keys, collection);
+            }
+        }
+
+        for (IndexInfo info : existing) {
+            if ("_id_".equals(info.getName())) continue;
+            if (!declaredKeys.contains(keyPattern(info))) {
+                log.info("Index {} {} on {} is not declared on the model", info.getName(), keyPattern(info), collection);
+            }
+        }
+
+        logUnused(collection);
+    }
+
+    // $indexStats counters reset on restart, so "unused" only means unused since the server started
+    private void logUnused(String collection) {
+        try {
+            for (Document stats : mongoTemplate.getCollection(collection)
+                    .aggregate(List.of(new Document("$indexStats", new Document())))) {
+                String name = stats.getString("name");
+                Document accesses = stats.get("accesses", Document.class);
+                if ("_id_".equals(name) || accesses == null) continue;
+                Object ops = accesses.get("ops");
+                if (ops instanceof Number number && number.longValue() == 0) {
+                    log.info("Index {} on {} has not been used since {}", name, collection, accesses.get("since"));
+                }
+            }
+        } catch (Exception e) {
+            log.debug("$indexStats not available for {}: {}", collection, e.getMessage());
+        }
+    }
+
+    private static String keyPattern(Document keys) {
+        StringJoiner pattern = new StringJoiner(", ", "{", "}");
+        keys.forEach((field, direction) -> pattern.add(field + ": " + direction));
+        return pattern.toString();
+    }
+
+    private static String keyPattern(IndexInfo info) {
+        StringJoiner pattern = new StringJoiner(", ", "{", "}");
+        for (IndexField field : info.getIndexFields()) {
+            Sort.Direction direction = field.getDirection();
+            String value = direction == null ? "special" : direction == Sort.Direction.ASC ? "1" : "-1";
+            pattern.add(field.getKey() + ": " + value);
+        }
+        return pattern.toString();
+    }
+}
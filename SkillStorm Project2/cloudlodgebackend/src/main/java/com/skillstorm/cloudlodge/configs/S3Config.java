@@ -1,5 +1,7 @@
 package com.skillstorm.cloudlodge.configs;
 
+import java.net.URI;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -8,6 +10,7 @@ import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
 
 @Configuration
 public class S3Config {
@@ -20,15 +23,28 @@ public class S3Config {
     @Value("${cloud.aws.credentials.access-key}")
     private String accessKey;
 
+    // Optional S3-compatible endpoint for local testing (ex: http://localhost:9000 for MinIO)
+    @Value("${cloud.aws.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${cloud.aws.s3.pathStyle:false}")
+    private boolean pathStyle;
+
     @Bean
     public S3Client s3Client() {
 
         AwsBasicCredentials awsBasicCredentials = AwsBasicCredentials.create(accessKey, secretKey);
 
-        return S3Client.builder()
+        S3ClientBuilder builder = S3Client.builder()
             .region(Region.of(region))
-            .credentialsProvider(StaticCredentialsProvider.create(awsBasicCredentials))
-            .build();
-                
+            .credentialsProvider(StaticCredentialsProvider.create(awsBasicCredentials));
+
+        if (endpoint != null && !endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint))
+                .forcePathStyle(true);
+        } else if (pathStyle) {
+            builder.forcePathStyle(true);
+        }
+        return builder.build();
     }
 }
@@ -12,8 +12,15 @@ public class StripeConfig {
     @Value("${stripe.secret.key}")
     private String stripeSecretKey;
 
+    // Optional override to point the SDK at a local Stripe stand-in (ex: stripe-mock on http://localhost:12111)
+    @Value("${stripe.apiBase:}")
+    private String stripeApiBase;
+
     @PostConstruct
     public void init() {
         Stripe.apiKey = stripeSecretKey;
+        if (stripeApiBase != null && !stripeApiBase.isBlank()) {
+            Stripe.overrideApiBase(stripeApiBase);
+        }
     }
 }
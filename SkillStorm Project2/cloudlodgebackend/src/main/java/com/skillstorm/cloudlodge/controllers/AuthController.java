@@ -3,6 +3,7 @@ package com.skillstorm.cloudlodge.controllers;
 import com.skillstorm.cloudlodge.models.LoginRequest;
 import com.skillstorm.cloudlodge.models.RegisterRequest;
 import com.skillstorm.cloudlodge.models.User;
+import com.skillstorm.cloudlodge.models.UserPrincipal;
 import com.skillstorm.cloudlodge.services.AuthService;
 
 import org.springframework.http.ResponseEntity;
@@ -51,7 +52,10 @@ public class AuthController {
         if (auth == null || !auth.isAuthenticated() || auth.getPrincipal() == "anonymousUser") {
             return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
         }
-        User user = (User) auth.getPrincipal();
+        if (!(auth.getPrincipal() instanceof UserPrincipal principal)) {
+            return ResponseEntity.status(401).body(Map.of("error", "Unauthorized"));
+        }
+        User user = authService.getUserById(principal.getId());
         return ResponseEntity.ok(user);
     }
 
@@ -1,27 +1,47 @@
 package com.skillstorm.cloudlodge.controllers;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.skillstorm.cloudlodge.models.Payment;
 import com.skillstorm.cloudlodge.models.Reservation;
 import com.skillstorm.cloudlodge.models.Room;
-import com.skillstorm.cloudlodge.models.RoomAvailability;
 import com.skillstorm.cloudlodge.models.User;
+import com.skillstorm.cloudlodge.services.AvailabilityMigrationService;
+import com.skillstorm.cloudlodge.services.BatchLoader;
+import com.skillstorm.cloudlodge.services.ImageGarbageCollector;
+import com.skillstorm.cloudlodge.services.IncomeRollupService;
 import com.skillstorm.cloudlodge.services.PaymentService;
 import com.skillstorm.cloudlodge.services.ReservationService;
 import com.skillstorm.cloudlodge.services.RoomAvailabilityService;
 import com.skillstorm.cloudlodge.services.RoomService;
-import com.skillstorm.cloudlodge.services.UserService;
+import com.skillstorm.cloudlodge.utils.IncomeHistogram;
 
 @RestController
 public class DashboardController {
@@ -34,7 +54,21 @@ public class DashboardController {
     @Autowired
     private RoomAvailabilityService roomAvailabilityService;
     @Autowired
-    private UserService userService;
+    private BatchLoader batchLoader;
+    @Autowired
+    private IncomeRollupService incomeRollupService;
+    @Autowired
+    private ImageGarbageCollector imageGarbageCollector;
+    @Autowired
+    private AvailabilityMigrationService availabilityMigrationService;
+    @Autowired
+    @Qualifier("dashboardExecutor")
+    private Executor dashboardExecutor;
+
+    @Value("${app.dashboard.sectionTimeoutMs:2000}")
+    private long sectionTimeoutMs;
+
+    private static final Logger log = LoggerFactory.getLogger(DashboardController.class);
 
     @GetMapping("/dashboard")
     public ResponseEntity<Map<String, Object>> dashboard(
@@ -45,146 +79,238 @@ public class DashboardController {
         Map<String, Object> data = new HashMap<>();
         LocalDate targetDate = dateStr != null ? LocalDate.parse(dateStr) : LocalDate.now();
 
-        // 1. Occupancy Rate (for targetDate)
-        List<Room> allRooms = roomService.findAllResolved().stream().map(r -> {
+        // Shared loads, each section starts as soon as the data it needs is in
+        CompletableFuture<List<Room>> roomsLoad = submit(() -> roomService.findAllResolved().stream().map(r -> {
             Room room = new Room();
             room.setId(r.getId());
             room.setIsActive(r.getIsActive());
             return room;
-        }).toList();
-        List<RoomAvailability> booked = roomAvailabilityService.findByDate(targetDate);
+        }).toList());
+        CompletableFuture<List<Reservation>> reservationsLoad = submit(reservationService::findAll);
+
+        // 1. Occupancy Rate (for targetDate)
+        CompletableFuture<Map<String, Object>> occupancy = roomsLoad.thenCombine(
+                submit(() -> roomAvailabilityService.findOccupiedRoomIds(targetDate).size()),
+                this::occupancySection);
+
+        // 2. Income (for targetDate and period), read from the pre-aggregated rollup buckets
+        CompletableFuture<Map<String, Object>> income = submit(() -> incomeSection(targetDate, period));
+
+        // 3. Inactive Rooms
+        CompletableFuture<Map<String, Object>> inactive = roomsLoad.thenApply(allRooms -> Map.of("inactiveRooms",
+                allRooms.stream().filter(r -> r.getIsActive() != null && !r.getIsActive()).count()));
+
+        // 4. Upcoming Reservations (by month if provided, else next 7 days)
+        CompletableFuture<List<Reservation>> upcoming = reservationsLoad.thenApplyAsync(
+                allReservations -> upcomingReservations(allReservations, reservationMonth), dashboardExecutor);
+
+        // 5. Recent Payments (last 7 days)
+        CompletableFuture<Map<Payment, Reservation>> recent = reservationsLoad.thenCombine(
+                submit(() -> paymentService.findCreatedAfter(java.time.Instant.now().minusSeconds(7 * 24 * 60 * 60))),
+                this::recentPayments);
+
+        // 6. Reservations flagged for staff, ex: paid after the hold expired with the nights gone
+        CompletableFuture<List<Reservation>> attention = submit(reservationService::findNeedingAttention);
+
+        // Sections run side by side, so one deadline for all of them is a per-section timeout.
+        // Room numbers and guest names come from the request scoped BatchLoader, so that enrichment runs here
+        // on the request thread: a timed out task keeps running after cancel() and must not touch request scope.
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sectionTimeoutMs);
+        List<String> timedOutSections = new ArrayList<>();
+        collect(data, timedOutSections, "occupancy", occupancy, deadline, section -> section);
+        collect(data, timedOutSections, "income", income, deadline, section -> section);
+        collect(data, timedOutSections, "inactiveRooms", inactive, deadline, section -> section);
+        collect(data, timedOutSections, "upcomingReservations", upcoming, deadline, this::upcomingReservationsSection);
+        collect(data, timedOutSections, "recentPayments", recent, deadline, this::recentPaymentsSection);
+        collect(data, timedOutSections, "needsAttention", attention, deadline, this::needsAttentionSection);
+        if (!timedOutSections.isEmpty()) {
+            data.put("timedOutSections", timedOutSections);
+        }
+
+        return ResponseEntity.ok(data);
+    }
+
+    // Start a load on the dashboard pool. A full pool rejects it (AbortPolicy) rather than running it on the
+    // request thread past the section deadline; the rejection fails the future, so the sections built on it are
+    // listed as timed out like any other. Stages chained with thenApplyAsync fail the same way on their own.
+    private <T> CompletableFuture<T> submit(Supplier<T> load) {
+        try {
+            return CompletableFuture.supplyAsync(load, dashboardExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Wait for a section until the deadline, then build its part of the response on this thread;
+    // a slow or failed section is left out and listed instead
+    private <T> void collect(Map<String, Object> data, List<String> timedOutSections, String name,
+                             CompletableFuture<T> section, long deadline, Function<T, Map<String, Object>> finish) {
+        try {
+            data.putAll(finish.apply(section.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)));
+        } catch (TimeoutException e) {
+            section.cancel(true);
+            log.warn("Dashboard section {} timed out after {} ms", name, sectionTimeoutMs);
+            timedOutSections.add(name);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            timedOutSections.add(name);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                log.warn("Dashboard section {} skipped, the dashboard pool is full", name);
+            } else {
+                log.error("Dashboard section {} failed", name, e.getCause());
+            }
+            timedOutSections.add(name);
+        } catch (RuntimeException e) {
+            log.error("Dashboard section {} failed", name, e);
+            timedOutSections.add(name);
+        }
+    }
+
+    private Map<String, Object> occupancySection(List<Room> allRooms, int bookedRooms) {
+        Map<String, Object> data = new HashMap<>();
         int totalRooms = allRooms.size();
-        int bookedRooms = booked.size();
         double occupancyRate = totalRooms == 0 ? 0.0 : (double) bookedRooms / totalRooms * 100.0;
         occupancyRate = Math.round(occupancyRate * 100.0) / 100.0;
         data.put("occupancyRate", occupancyRate);
         data.put("occupiedRooms", bookedRooms);
         data.put("totalRooms", totalRooms);
+        return data;
+    }
 
-        // 2. Income (for targetDate and period)
-        List<Payment> allPayments = paymentService.findAll();
-        double income = allPayments.stream()
-            .filter(p -> p.getStatus() == Payment.Status.SUCCEEDED &&
-                p.getCreatedAt() != null &&
-                p.getCreatedAt().atZone(java.time.ZoneId.systemDefault()).toLocalDate().equals(targetDate))
-            .mapToDouble(Payment::getAmount)
-            .sum();
-        data.put("income", income);
+    private Map<String, Object> incomeSection(LocalDate targetDate, String period) {
+        Map<String, Object> data = new HashMap<>();
+        java.time.ZoneId zone = java.time.ZoneId.systemDefault();
 
         // Dynamic income history and labels
-        List<Double> incomeHistory;
-        List<String> incomeLabels;
+        List<Double> incomeHistory = new java.util.ArrayList<>();
+        List<String> incomeLabels = new java.util.ArrayList<>();
+        double income;
         if (period.equals("month")) {
             // Show daily income for the month of targetDate
-            int daysInMonth = targetDate.lengthOfMonth();
-            incomeHistory = new java.util.ArrayList<>();
-            incomeLabels = new java.util.ArrayList<>();
-            for (int i = 1; i <= daysInMonth; i++) {
-                LocalDate day = targetDate.withDayOfMonth(i);
-                double dayIncome = allPayments.stream()
-                    .filter(p -> p.getStatus() == Payment.Status.SUCCEEDED &&
-                        p.getCreatedAt() != null &&
-                        p.getCreatedAt().atZone(java.time.ZoneId.systemDefault()).toLocalDate().equals(day))
-                    .mapToDouble(Payment::getAmount)
-                    .sum();
-                incomeHistory.add(dayIncome);
-                incomeLabels.add(String.valueOf(i));
+            LocalDate monthStart = targetDate.withDayOfMonth(1);
+            IncomeHistogram daily = incomeRollupService.histogram(IncomeHistogram.Granularity.DAY, monthStart, monthStart.plusMonths(1));
+            for (int i = 0; i < daily.size(); i++) {
+                incomeHistory.add(daily.get(i));
+                incomeLabels.add(String.valueOf(i + 1));
             }
+            income = daily.get(targetDate.getDayOfMonth() - 1);
         } else {
             // Show hourly income for the target day
-            incomeHistory = new java.util.ArrayList<>();
-            incomeLabels = new java.util.ArrayList<>();
-            for (int h = 0; h < 24; h++) {
-                int hour = h;
-                double hourIncome = allPayments.stream()
-                    .filter(p -> p.getStatus() == Payment.Status.SUCCEEDED &&
-                        p.getCreatedAt() != null &&
-                        p.getCreatedAt().atZone(java.time.ZoneId.systemDefault()).toLocalDate().equals(targetDate) &&
-                        p.getCreatedAt().atZone(java.time.ZoneId.systemDefault()).getHour() == hour)
-                    .mapToDouble(Payment::getAmount)
-                    .sum();
-                incomeHistory.add(hourIncome);
-                incomeLabels.add(String.format("%02d:00", hour));
+            IncomeHistogram hourly = incomeRollupService.histogram(IncomeHistogram.Granularity.HOUR, targetDate, targetDate.plusDays(1));
+            for (int i = 0; i < hourly.size(); i++) {
+                incomeHistory.add(hourly.get(i));
+                incomeLabels.add(String.format("%02d:00", hourly.bucketStart(i).atZone(zone).getHour()));
             }
+            income = hourly.total();
         }
+        data.put("income", income);
         data.put("incomeHistory", incomeHistory);
         data.put("incomeLabels", incomeLabels);
+        return data;
+    }
 
-        // 3. Inactive Rooms
-        long inactiveRooms = allRooms.stream().filter(r -> r.getIsActive() != null && !r.getIsActive()).count();
-        data.put("inactiveRooms", inactiveRooms);
-
-        // 4. Upcoming Reservations (by month if provided, else next 7 days)
-        List<Reservation> allReservations = reservationService.findAll();
-        Map<String, Reservation> reservationById = allReservations.stream()
-                .filter(r -> r.getId() != null)
-                .collect(Collectors.toMap(Reservation::getId, r -> r, (a, b) -> a));
-        Map<String, Reservation> reservationByPaymentId = allReservations.stream()
-                .filter(r -> r.getPaymentId() != null)
-                .collect(Collectors.toMap(Reservation::getPaymentId, r -> r, (a, b) -> a));
-        List<Map<String, Object>> upcomingReservations;
+    private List<Reservation> upcomingReservations(List<Reservation> allReservations, String reservationMonth) {
+        List<Reservation> upcoming;
         if (reservationMonth != null && reservationMonth.matches("\\d{4}-\\d{2}")) {
             int year = Integer.parseInt(reservationMonth.substring(0, 4));
             int month = Integer.parseInt(reservationMonth.substring(5, 7));
             LocalDate monthStart = LocalDate.of(year, month, 1);
             LocalDate monthEnd = monthStart.withDayOfMonth(monthStart.lengthOfMonth());
-            upcomingReservations = allReservations.stream()
+            upcoming = allReservations.stream()
                 .filter(r -> r.getCheckInDate() != null &&
                     !r.getCheckInDate().isBefore(monthStart) && !r.getCheckInDate().isAfter(monthEnd)
                     && (r.getStatus() == null || !r.getStatus().name().equals("CANCELLED")))
-                .map(r -> {
-                    Map<String, Object> m = new HashMap<>();
-                    m.put("id", r.getId());
-                    m.put("userId", r.getUserId());
-                    m.put("guestName", r.getUserId()); // Replace with actual guest name if available
-                    // Lookup real room number
-                    Room room = roomService.findById(r.getRoomUnitId()).orElse(null);
-                    m.put("roomNumber", room != null && room.getRoomNumber() != null ? room.getRoomNumber() : r.getRoomUnitId());
-                    m.put("checkInDate", r.getCheckInDate().toString());
-                    m.put("checkOutDate", r.getCheckOutDate() != null ? r.getCheckOutDate().toString() : "");
-                    return m;
-                })
                 .collect(Collectors.toList());
         } else {
             LocalDate now = LocalDate.now();
             LocalDate weekFromNow = now.plusDays(7);
-            upcomingReservations = allReservations.stream()
+            upcoming = allReservations.stream()
                 .filter(r -> r.getCheckInDate() != null && !r.getCheckInDate().isBefore(now) && !r.getCheckInDate().isAfter(weekFromNow)
                     && (r.getStatus() == null || !r.getStatus().name().equals("CANCELLED")))
-                .map(r -> {
-                    Map<String, Object> m = new HashMap<>();
-                    m.put("id", r.getId());
-                    m.put("userId", r.getUserId());
-                    m.put("guestName", r.getUserId()); // Replace with actual guest name if available
-                    // Lookup real room number
-                    Room room = roomService.findById(r.getRoomUnitId()).orElse(null);
-                    m.put("roomNumber", room != null && room.getRoomNumber() != null ? room.getRoomNumber() : r.getRoomUnitId());
-                    m.put("checkInDate", r.getCheckInDate().toString());
-                    m.put("checkOutDate", r.getCheckOutDate() != null ? r.getCheckOutDate().toString() : "");
-                    return m;
-                })
                 .collect(Collectors.toList());
         }
-        data.put("upcomingReservations", upcomingReservations);
+        return upcoming;
+    }
 
-        // 5. Recent Payments (last 7 days)
-        List<Map<String, Object>> recentPayments = allPayments.stream()
-            .filter(p -> p.getCreatedAt() != null && p.getCreatedAt().isAfter(java.time.Instant.now().minusSeconds(7 * 24 * 60 * 60)))
+    // Runs on the request thread (BatchLoader is request scoped)
+    private Map<String, Object> upcomingReservationsSection(List<Reservation> upcoming) {
+        // Lookup real room numbers in one query
+        Map<String, Room> roomsById = batchLoader.loadRooms(upcoming.stream().map(Reservation::getRoomUnitId).toList());
+        List<Map<String, Object>> upcomingReservations = upcoming.stream()
+            .map(r -> {
+                Map<String, Object> m = new HashMap<>();
+                m.put("id", r.getId());
+                m.put("userId", r.getUserId());
+                m.put("guestName", r.getUserId()); // Replace with actual guest name if available
+                Room room = roomsById.get(r.getRoomUnitId());
+                m.put("roomNumber", room != null && room.getRoomNumber() != null ? room.getRoomNumber() : r.getRoomUnitId());
+                m.put("checkInDate", r.getCheckInDate().toString());
+                m.put("checkOutDate", r.getCheckOutDate() != null ? r.getCheckOutDate().toString() : "");
+                return m;
+            })
+            .collect(Collectors.toList());
+        return Map.of("upcomingReservations", upcomingReservations);
+    }
+
+    // Runs on the request thread (BatchLoader is request scoped)
+    private Map<String, Object> needsAttentionSection(List<Reservation> flagged) {
+        Map<String, Room> roomsById = batchLoader.loadRooms(flagged.stream().map(Reservation::getRoomUnitId).toList());
+        List<Map<String, Object>> needsAttention = flagged.stream()
+            .map(r -> {
+                Map<String, Object> m = new HashMap<>();
+                m.put("id", r.getId());
+                m.put("userId", r.getUserId());
+                Room room = roomsById.get(r.getRoomUnitId());
+                m.put("roomNumber", room != null && room.getRoomNumber() != null ? room.getRoomNumber() : r.getRoomUnitId());
+                m.put("checkInDate", r.getCheckInDate() != null ? r.getCheckInDate().toString() : "");
+                m.put("checkOutDate", r.getCheckOutDate() != null ? r.getCheckOutDate().toString() : "");
+                m.put("status", r.getStatus() != null ? r.getStatus().toString() : "");
+                m.put("paymentId", r.getPaymentId());
+                m.put("reason", r.getAttentionReason());
+                return m;
+            })
+            .collect(Collectors.toList());
+        return Map.of("needsAttention", needsAttention);
+    }
+
+    // Recent payments in order, each with its reservation (null if none could be matched)
+    private Map<Payment, Reservation> recentPayments(List<Reservation> allReservations, List<Payment> payments) {
+        Map<String, Reservation> reservationById = allReservations.stream()
+                .filter(r -> r.getId() != null)
+                .collect(Collectors.toMap(Reservation::getId, r -> r, (a, b) -> a));
+        Map<String, Reservation> reservationByPaymentId = allReservations.stream()
+                .filter(r -> r.getPaymentId() != null)
+                .collect(Collectors.toMap(Reservation::getPaymentId, r -> r, (a, b) -> a));
+        Map<Payment, Reservation> reservationByPayment = new LinkedHashMap<>();
+        for (Payment p : payments) {
+            Reservation reservation = null;
+            if (p.getReservationId() != null) {
+                reservation = reservationById.get(p.getReservationId());
+            }
+            if (reservation == null) {
+                reservation = reservationByPaymentId.get(p.getId());
+            }
+            if (reservation == null && p.getTransactionId() != null) {
+                reservation = reservationByPaymentId.get(p.getTransactionId());
+            }
+            reservationByPayment.put(p, reservation);
+        }
+        return reservationByPayment;
+    }
+
+    // Runs on the request thread (BatchLoader is request scoped)
+    private Map<String, Object> recentPaymentsSection(Map<Payment, Reservation> reservationByPayment) {
+        // Lookup guest names in one query
+        Map<String, User> usersById = batchLoader.loadUsers(reservationByPayment.values().stream()
+                .filter(Objects::nonNull).map(Reservation::getUserId).toList());
+        List<Map<String, Object>> recentPayments = reservationByPayment.keySet().stream()
             .map(p -> {
                 Map<String, Object> m = new HashMap<>();
                 String reservationId = p.getReservationId();
                 String userId = null;
                 String guestName = "";
-                Reservation reservation = null;
-                if (reservationId != null) {
-                    reservation = reservationById.get(reservationId);
-                }
-                if (reservation == null) {
-                    reservation = reservationByPaymentId.get(p.getId());
-                }
-                if (reservation == null && p.getTransactionId() != null) {
-                    reservation = reservationByPaymentId.get(p.getTransactionId());
-                }
+                Reservation reservation = reservationByPayment.get(p);
                 if (reservation != null && reservationId == null) {
                     reservationId = reservation.getId();
                 }
@@ -192,7 +318,7 @@ public class DashboardController {
                     userId = reservation.getUserId();
                 }
                 if (userId != null) {
-                    User user = userService.findById(userId).orElse(null);
+                    User user = usersById.get(userId);
                     if (user != null && user.getFullName() != null) {
                         guestName = user.getFullName();
                     }
@@ -207,8 +333,43 @@ public class DashboardController {
                 return m;
             })
             .collect(Collectors.toList());
-        data.put("recentPayments", recentPayments);
+        return Map.of("recentPayments", recentPayments);
+    }
 
-        return ResponseEntity.ok(data);
+    // Backfill the income rollup buckets from the payments collection
+    @PostMapping("/dashboard/income/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildIncome() {
+        try {
+            int buckets = incomeRollupService.rebuild();
+            return ResponseEntity.ok(Map.of("buckets", buckets));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().header("Error", "Sorry! We have an internal Error! Please check back later.").build();
+        }
+    }
+
+    // Delete S3 images no room or room type points to anymore (dryRun=true only reports them)
+    @PostMapping("/dashboard/images/gc")
+    public ResponseEntity<Map<String, Object>> collectImages(@RequestParam(defaultValue = "true") boolean dryRun) {
+        try {
+            Map<String, Object> report = imageGarbageCollector.collect(dryRun);
+            if (report == null) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).header("Error", "Image cleanup is already running").build();
+            }
+            return ResponseEntity.ok(report);
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().header("Error", "Sorry! We have an internal Error! Please check back later.").build();
+        }
+    }
+
+    // Convert per-night roomAvailability rows into roomStays intervals (app.availability.storageMode=interval)
+    @PostMapping("/dashboard/availability/migrate")
+    public ResponseEntity<Map<String, Object>> migrateAvailability(@RequestParam(defaultValue = "false") boolean deleteNightly) {
+        try {
+            return ResponseEntity.ok(availabilityMigrationService.migrateToIntervals(deleteNightly));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).header("Error", e.getMessage()).build();
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().header("Error", "Sorry! We have an internal Error! Please check back later.").build();
+        }
     }
 }
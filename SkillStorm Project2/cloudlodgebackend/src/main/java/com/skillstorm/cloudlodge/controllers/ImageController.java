@@ -0,0 +1,69 @@
+package com.skillstorm.cloudlodge.controllers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import com.skillstorm.cloudlodge.services.ImageCache;
+
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+// Serves room images out of the local disk cache (S3 is only hit on a miss).
+// The body is a file Resource, so Spring answers Range requests with resource regions, and the
+// ETag / Last-Modified headers let it answer If-None-Match / If-Modified-Since with a 304.
+@RestController
+public class ImageController {
+
+    private static final String UNPIN_CALLBACK = ImageController.class.getName() + ".unpin";
+
+    private final ImageCache imageCache;
+
+    public ImageController(ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    // /images/<key> for the object at images/<key>, the same key uploadFile stores under
+    @GetMapping("/images/{*path}")
+    public ResponseEntity<Resource> getImage(@PathVariable String path) {
+        try {
+            if (path.contains("..")) {
+                return ResponseEntity.badRequest().build();
+            }
+            ImageCache.Entry entry = imageCache.get("images" + path);
+            // the file is read while the body is written, after this method returns; keep it pinned until the request ends
+            RequestContextHolder.currentRequestAttributes().registerDestructionCallback(
+                    UNPIN_CALLBACK, () -> imageCache.unpin(entry), RequestAttributes.SCOPE_REQUEST);
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    // keys are never reused, so the content behind a URL never changes
+                    .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                    .contentType(entry.getContentType() != null
+                            ? MediaType.parseMediaType(entry.getContentType())
+                            : MediaType.APPLICATION_OCTET_STREAM);
+            if (entry.getETag() != null) {
+                response.eTag(entry.getETag());
+            }
+            if (entry.getLastModified() != null) {
+                response.lastModified(entry.getLastModified());
+            }
+            return response.body(new FileSystemResource(entry.getFile()));
+        }
+        catch (NoSuchKeyException e) {
+            return ResponseEntity.notFound().build();
+        }
+        catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .header("Error", "Sorry! We have an internal Error! Please check back later.")
+                    .build();
+        }
+    }
+}
@@ -13,28 +13,55 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import jakarta.servlet.http.HttpServletResponse;
+
 import com.skillstorm.cloudlodge.models.Payment;
 import com.skillstorm.cloudlodge.models.PaymentIntentRequest;
 import com.skillstorm.cloudlodge.models.User;
+import com.skillstorm.cloudlodge.models.UserPrincipal;
 import com.skillstorm.cloudlodge.services.PaymentService;
 import com.skillstorm.cloudlodge.services.StripePaymentService;
+import com.skillstorm.cloudlodge.services.StripeWebhookInbox;
+import com.skillstorm.cloudlodge.services.UserService;
+import com.skillstorm.cloudlodge.utils.NdjsonWriter;
 import com.stripe.exception.StripeException;
 
-import jakarta.servlet.http.HttpServletRequest;
-
 @RestController
 @RequestMapping("/payments")
 public class PaymentController {
 
     private final PaymentService paymentService;
     private final StripePaymentService stripePaymentService;
+    private final UserService userService;
+    private final StripeWebhookInbox stripeWebhookInbox;
+    private final NdjsonWriter ndjsonWriter;
 
-    public PaymentController(PaymentService paymentService, StripePaymentService stripePaymentService) {
+    public PaymentController(PaymentService paymentService, StripePaymentService stripePaymentService,
+                             UserService userService, StripeWebhookInbox stripeWebhookInbox,
+                             NdjsonWriter ndjsonWriter) {
         this.paymentService = paymentService;
         this.stripePaymentService = stripePaymentService;
+        this.userService = userService;
+        this.stripeWebhookInbox = stripeWebhookInbox;
+        this.ndjsonWriter = ndjsonWriter;
+    }
+
+    // Logged in principal, or null
+    private UserPrincipal currentPrincipal(Authentication authentication) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof UserPrincipal principal)) {
+            return null;
+        }
+        return principal;
+    }
+
+    // Full user document for the logged in principal, only for endpoints that change the user
+    private User currentUser(Authentication authentication) {
+        UserPrincipal principal = currentPrincipal(authentication);
+        return principal == null ? null : userService.findById(principal.getId()).orElse(null);
     }
 
     // Public config endpoint for publishable key
@@ -47,10 +74,10 @@ public class PaymentController {
     @PostMapping("/intent")
     public ResponseEntity<?> createPaymentIntent(@RequestBody PaymentIntentRequest request, Authentication authentication) {
         try {
-            if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+            UserPrincipal user = currentPrincipal(authentication);
+            if (user == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
             }
-            User user = (User) authentication.getPrincipal();
             return ResponseEntity.ok(stripePaymentService.createPaymentIntent(request, user));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -60,13 +87,13 @@ public class PaymentController {
     }
 
     // Stripe webhook (no auth, signature verified)
+    // The event is stored in the inbox and acknowledged right away; workers apply it in the background
     @PostMapping("/webhook")
     @ResponseBody
     public ResponseEntity<String> handleStripeWebhook(@RequestBody String payload,
-                                                      @RequestHeader("Stripe-Signature") String sigHeader,
-                                                      HttpServletRequest request) {
+                                                      @RequestHeader("Stripe-Signature") String sigHeader) {
         try {
-            stripePaymentService.handleWebhook(payload, sigHeader, request);
+            stripeWebhookInbox.accept(payload, sigHeader);
             return ResponseEntity.ok("");
         } catch (StripeException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Webhook error");
@@ -76,7 +103,8 @@ public class PaymentController {
     // Manually sync Stripe payment methods to user profile (fallback)
     @PostMapping("/methods/sync")
     public ResponseEntity<?> syncPaymentMethods(Authentication authentication) {
-        if (authentication == null || !(authentication.getPrincipal() instanceof User user)) {
+        User user = currentUser(authentication);
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
         }
         try {
@@ -88,7 +116,8 @@ public class PaymentController {
 
     @DeleteMapping("/methods/{paymentMethodId}")
     public ResponseEntity<?> deletePaymentMethod(@PathVariable String paymentMethodId, Authentication authentication) {
-        if (authentication == null || !(authentication.getPrincipal() instanceof User user)) {
+        User user = currentUser(authentication);
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
         }
         try {
@@ -101,7 +130,8 @@ public class PaymentController {
 
     @PostMapping("/setup-intent")
     public ResponseEntity<?> createSetupIntent(Authentication authentication) {
-        if (authentication == null || !(authentication.getPrincipal() instanceof User user)) {
+        UserPrincipal user = currentPrincipal(authentication);
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
         }
         try {
@@ -112,9 +142,16 @@ public class PaymentController {
     }
 
     // GET all payments
+    // with ?cursor= or ?limit= returns one page instead, sorted by ?sort= (createdAt, id) and ?desc=
     @GetMapping
-    public ResponseEntity<List<Payment>> getAllPayments() {
+    public ResponseEntity<?> getAllPayments(@RequestParam(required = false) String cursor,
+                                            @RequestParam(required = false) Integer limit,
+                                            @RequestParam(required = false) String sort,
+                                            @RequestParam(defaultValue = "false") boolean desc) {
         try {
+            if (cursor != null || limit != null) {
+                return new ResponseEntity<>(paymentService.findPage(sort, desc, cursor, limit), HttpStatus.OK);
+            }
             List<Payment> payments = paymentService.findAll();
             return new ResponseEntity<>(payments, HttpStatus.OK);
         }
@@ -130,6 +167,12 @@ public class PaymentController {
         }
     }
 
+    // GET all payments as newline-delimited JSON (Accept: application/x-ndjson), streamed from a Mongo cursor
+    @GetMapping(produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamAllPayments(HttpServletResponse response) {
+        ndjsonWriter.write(paymentService::streamAll, response);
+    }
+
     // GET /payments/{id}
     @GetMapping("/{id}")
     public ResponseEntity<Payment> getPaymentById(@PathVariable String id) {
@@ -6,6 +6,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.security.core.Authentication;
 
 import com.skillstorm.cloudlodge.models.User;
+import com.skillstorm.cloudlodge.models.UserPrincipal;
 import com.skillstorm.cloudlodge.services.UserService;
 import com.skillstorm.cloudlodge.dtos.UserDTO;
 
@@ -54,12 +55,11 @@ public class ProfileController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        // Extract user from principal
-        User userPrincipal = (User) authentication.getPrincipal();
-        String email = userPrincipal.getEmail();
+        // Role comes from the principal, the full user is loaded by id
+        UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
         String role = userPrincipal.getRole() != null ? userPrincipal.getRole().name() : "GUEST";
 
-        User user = userService.findByEmail(email).orElse(null);
+        User user = userService.findById(userPrincipal.getId()).orElse(null);
 
         if (user == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -77,11 +77,10 @@ public class ProfileController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        // Correctly get email from principal
-        User userPrincipal = (User) authentication.getPrincipal();
-        String email = userPrincipal.getEmail();
+        // Load the full user by id from the principal
+        UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
 
-        User user = userService.findByEmail(email).orElse(null);
+        User user = userService.findById(userPrincipal.getId()).orElse(null);
 
         if (user == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
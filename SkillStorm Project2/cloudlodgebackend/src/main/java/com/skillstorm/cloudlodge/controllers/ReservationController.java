@@ -1,6 +1,7 @@
 package com.skillstorm.cloudlodge.controllers;
 
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 import org.springframework.http.HttpStatus;
@@ -13,31 +14,45 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import jakarta.servlet.http.HttpServletResponse;
+
 import com.skillstorm.cloudlodge.models.Reservation;
-import com.skillstorm.cloudlodge.models.RoomAvailability;
 import com.skillstorm.cloudlodge.services.ReservationService;
-import com.skillstorm.cloudlodge.services.RoomAvailabilityService;
+import com.skillstorm.cloudlodge.utils.NdjsonWriter;
 
 @RestController
 @RequestMapping("/reservations")
 public class ReservationController {
 
     private final ReservationService reservationService;
-    private final RoomAvailabilityService roomAvailabilityService;
+    private final NdjsonWriter ndjsonWriter;
 
-    public ReservationController(ReservationService reservationService, RoomAvailabilityService roomAvailabilityService) {
+    public ReservationController(ReservationService reservationService, NdjsonWriter ndjsonWriter) {
         this.reservationService = reservationService;
-        this.roomAvailabilityService = roomAvailabilityService;
+        this.ndjsonWriter = ndjsonWriter;
     }
 
     // GET all reservations
+    // with ?cursor= or ?limit= returns one page instead, sorted by ?sort= (checkInDate, createdAt, id) and ?desc=
     @GetMapping
-    public ResponseEntity<List<Reservation>> getAllReservations() {
+    public ResponseEntity<?> getAllReservations(@RequestParam(required = false) String cursor,
+                                                @RequestParam(required = false) Integer limit,
+                                                @RequestParam(required = false) String sort,
+                                                @RequestParam(defaultValue = "false") boolean desc) {
         try {
+            if (cursor != null || limit != null) {
+                return new ResponseEntity<>(reservationService.findPage(sort, desc, cursor, limit), HttpStatus.OK);
+            }
             return new ResponseEntity<>(reservationService.findAll(), HttpStatus.OK);
         }
+        catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .header("Error", e.getMessage())
+                .build();
+        }
         catch (Exception e) {
             return ResponseEntity.internalServerError()
                 .header("Error", "Sorry! We have an internal Error! Please check back later.")
@@ -45,6 +60,12 @@ public class ReservationController {
         }
     }
 
+    // GET all reservations as newline-delimited JSON (Accept: application/x-ndjson), streamed from a Mongo cursor
+    @GetMapping(produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamAllReservations(HttpServletResponse response) {
+        ndjsonWriter.write(reservationService::streamAll, response);
+    }
+
     // GET reservation by ID
     @GetMapping("/{id}")
     public ResponseEntity<Reservation> getReservationById(@PathVariable String id) {
@@ -92,6 +113,27 @@ public class ReservationController {
         }
     }
 
+    // GET active reservations on a room unit overlapping [start, end) (YYYY-MM-DD)
+    @GetMapping("/room/{roomUnitId}/conflicts")
+    public ResponseEntity<List<Reservation>> getConflicts(@PathVariable String roomUnitId,
+                                                          @RequestParam String start,
+                                                          @RequestParam String end) {
+        try {
+            return new ResponseEntity<>(reservationService.findConflictingReservations(
+                    roomUnitId, LocalDate.parse(start), LocalDate.parse(end)), HttpStatus.OK);
+        }
+        catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest()
+                .header("Error", "Invalid date format. Use YYYY-MM-DD.")
+                .build();
+        }
+        catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                .header("Error", "Sorry! We have an internal Error! Please check back later.")
+                .build();
+        }
+    }
+
     // GET reservations by check-in date range
     @GetMapping("/checkin/{start}/{end}")
     public ResponseEntity<List<Reservation>> getByCheckInRange(@PathVariable String start,@PathVariable String end) {
@@ -115,27 +157,20 @@ public class ReservationController {
     @PostMapping("/create")
     public ResponseEntity<Reservation> createReservation(@RequestBody Reservation reservation, Authentication authentication) {
         try {
-            if (authentication != null && authentication.getPrincipal() instanceof com.skillstorm.cloudlodge.models.User userPrincipal) {
+            if (authentication != null && authentication.getPrincipal() instanceof com.skillstorm.cloudlodge.models.UserPrincipal userPrincipal) {
                 if (reservation.getUserId() == null || reservation.getUserId().isBlank()) {
                     reservation.setUserId(userPrincipal.getId());
                 }
             }
 
-            Reservation saved = reservationService.save(reservation);
-            // Create RoomAvailability entries for each day in the reservation
-            LocalDate start = saved.getCheckInDate();
-            LocalDate end = saved.getCheckOutDate();
-            if (start != null && end != null && start.isBefore(end)) {
-                for (LocalDate date = start; date.isBefore(end); date = date.plusDays(1)) {
-                    RoomAvailability availability = new RoomAvailability();
-                    availability.setRoomUnitId(saved.getRoomUnitId());
-                    availability.setDate(date);
-                    availability.setReservationId(saved.getId());
-                    roomAvailabilityService.save(availability);
-                }
-            }
+            Reservation saved = reservationService.createReservation(reservation);
             return new ResponseEntity<>(saved, HttpStatus.CREATED);
         }
+        catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header("Error", e.getMessage())
+                .build();
+        }
         catch (Exception e) {
             return ResponseEntity.internalServerError()
                 .header("Error", "Sorry! We have an internal Error! Please check back later.")
@@ -147,10 +182,19 @@ public class ReservationController {
     @PutMapping("/update/{id}")
     public ResponseEntity<Reservation> updateReservation(@PathVariable String id, @RequestBody Reservation reservation) {
         try {
-            reservation.setId(id);
-            Reservation updated = reservationService.save(reservation);
+            Reservation updated = reservationService.updateReservation(id, reservation);
             return new ResponseEntity<>(updated, HttpStatus.OK);
         }
+        catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .header("Error", e.getMessage())
+                .build();
+        }
+        catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header("Error", e.getMessage())
+                .build();
+        }
         catch (Exception e) {
             return ResponseEntity.internalServerError()
                 .header("Error", "Sorry! We have an internal Error! Please check back later.")
@@ -12,28 +12,46 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import jakarta.servlet.http.HttpServletResponse;
+
 import com.skillstorm.cloudlodge.models.RoomAvailability;
 import com.skillstorm.cloudlodge.services.RoomAvailabilityService;
+import com.skillstorm.cloudlodge.utils.NdjsonWriter;
 
 @RestController
 @RequestMapping("/availability")
 public class RoomAvailabilityController {
 
     private final RoomAvailabilityService availabilityService;
+    private final NdjsonWriter ndjsonWriter;
 
-    public RoomAvailabilityController(RoomAvailabilityService availabilityService) {
+    public RoomAvailabilityController(RoomAvailabilityService availabilityService, NdjsonWriter ndjsonWriter) {
         this.availabilityService = availabilityService;
+        this.ndjsonWriter = ndjsonWriter;
     }
 
     // GET all availability entries
+    // with ?cursor= or ?limit= returns one page instead, sorted by ?sort= (date, id) and ?desc=
     @GetMapping
-    public ResponseEntity<List<RoomAvailability>> getAll() {
+    public ResponseEntity<?> getAll(@RequestParam(required = false) String cursor,
+                                    @RequestParam(required = false) Integer limit,
+                                    @RequestParam(required = false) String sort,
+                                    @RequestParam(defaultValue = "false") boolean desc) {
         try {
+            if (cursor != null || limit != null) {
+                return new ResponseEntity<>(availabilityService.findPage(sort, desc, cursor, limit), HttpStatus.OK);
+            }
             List<RoomAvailability> all = availabilityService.findAll();
             return new ResponseEntity<>(all, HttpStatus.OK);
         }
+        catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .header("Error", e.getMessage())
+                    .build();
+        }
         catch (Exception e) {
             return ResponseEntity.internalServerError()
                     .header("Error", "Sorry! We have an internal Error! Please check back later.")
@@ -41,6 +59,12 @@ public class RoomAvailabilityController {
         }
     }
 
+    // GET all availability entries as newline-delimited JSON (Accept: application/x-ndjson), streamed from a Mongo cursor
+    @GetMapping(produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamAll(HttpServletResponse response) {
+        ndjsonWriter.write(availabilityService::streamAll, response);
+    }
+
     // GET availability for a specific roomUnitId
     @GetMapping("/room/{roomUnitId}")
     public ResponseEntity<List<RoomAvailability>> getByRoomUnit(@PathVariable String roomUnitId) {
@@ -2,6 +2,7 @@ package com.skillstorm.cloudlodge.controllers;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -19,12 +20,14 @@ import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.skillstorm.cloudlodge.dtos.CursorPage;
 import com.skillstorm.cloudlodge.models.ResolvedRoom;
 import com.skillstorm.cloudlodge.models.Room;
+import com.skillstorm.cloudlodge.services.ImageVariantService;
 import com.skillstorm.cloudlodge.services.RoomService;
 import com.skillstorm.cloudlodge.services.S3Service;
 import org.springframework.security.core.Authentication;
-import com.skillstorm.cloudlodge.models.User;
+import com.skillstorm.cloudlodge.models.UserPrincipal;
 
 
 @RestController
@@ -32,10 +35,12 @@ import com.skillstorm.cloudlodge.models.User;
 public class RoomController {
     private final RoomService roomService;
     private final S3Service s3Service;
+    private final ImageVariantService imageVariantService;
 
-    public RoomController(RoomService roomService, S3Service s3Service) {
+    public RoomController(RoomService roomService, S3Service s3Service, ImageVariantService imageVariantService) {
         this.roomService = roomService;
         this.s3Service = s3Service;
+        this.imageVariantService = imageVariantService;
     }
 
     /*
@@ -59,13 +64,14 @@ public class RoomController {
     @GetMapping
     public ResponseEntity<List<ResolvedRoom>> getAllRooms(Authentication auth) {
         try {
-            User user = (User) auth.getPrincipal();
+            UserPrincipal user = (UserPrincipal) auth.getPrincipal();
 
             // Convert enum to string for consistency across app
             String role = user.getRole() != null ? user.getRole().name() : "GUEST";
 
             // Pass role string to service for filtering
             List<ResolvedRoom> rooms = roomService.findAllResolvedForRole(role);
+            imageVariantService.useImageCache(rooms);
 
             return new ResponseEntity<>(rooms, HttpStatus.OK);
         } catch (Exception e) {
@@ -141,21 +147,29 @@ public ResponseEntity<Room> updateRoom(
                                     .getTypeFactory()
                                     .constructCollectionType(List.class, String.class)
                     );
-            currentImages.removeAll(deleteImages);
+            // the room list hands out /images/<key> URLs, so match on the object rather than the URL text
+            s3Service.removeImages(currentImages, deleteImages);
         }
 
         // Upload and append new images
+        List<String> newImages = List.of();
         if (images != null && !images.isEmpty()) {
-            for (MultipartFile file : images) {
-                currentImages.add(s3Service.uploadFile(file, "images"));
-            }
+            newImages = s3Service.uploadFiles(images, "images");
+            currentImages.addAll(newImages);
         }
 
         room.setImagesOverride(currentImages.isEmpty() ? null : currentImages);
+        room.setImageVariantsOverride(
+                ImageVariantService.retain(existing.getImageVariantsOverride(), currentImages));
 
         Room updatedRoom = roomService.save(room);
+        imageVariantService.generateForRoom(id, newImages);
         return new ResponseEntity<>(updatedRoom, HttpStatus.OK);
 
+    } catch (RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Error", "Too many image uploads in progress, please try again shortly")
+                .build();
     } catch (Exception e) {
         return ResponseEntity.internalServerError()
                 .header("Error", "Sorry! We have an internal Error! Please check back later.")
@@ -204,7 +218,7 @@ public ResponseEntity<Room> updateRoom(
     }
 
     @GetMapping("/search")
-    public Page<ResolvedRoom> searchRooms(
+    public ResponseEntity<?> searchRooms(
         @RequestParam(required = false) Integer roomNumber,
         @RequestParam(required = false) Boolean isActive,
         @RequestParam(required = false) String roomCategory,
@@ -212,9 +226,39 @@ public ResponseEntity<Room> updateRoom(
         @RequestParam(required = false) String endDate,
         @RequestParam(required = false) Integer guests,
         @RequestParam(required = false, defaultValue = "false") Boolean includeBooked,
+        @RequestParam(required = false) String imageSize,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false) Integer limit,
+        @RequestParam(defaultValue = "false") boolean desc,
         Pageable pageable
     ) {
-        return roomService.searchResolvedRooms(
+        // ?cursor= or ?limit= switches to cursor pages ordered by roomNumber (no total count)
+        if (cursor != null || limit != null) {
+            try {
+                CursorPage<ResolvedRoom> page = roomService.searchResolvedRoomsKeyset(
+                    roomNumber,
+                    isActive,
+                    roomCategory,
+                    startDate,
+                    endDate,
+                    guests,
+                    includeBooked,
+                    desc,
+                    cursor,
+                    limit
+                );
+                ImageVariantService.useSize(page.getItems(), imageSize);
+                imageVariantService.useImageCache(page.getItems());
+                return ResponseEntity.ok(page);
+            }
+            catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest()
+                    .header("Error", e.getMessage())
+                    .build();
+            }
+        }
+
+        Page<ResolvedRoom> page = roomService.searchResolvedRooms(
             roomNumber,
             isActive,
             roomCategory,
@@ -224,6 +268,10 @@ public ResponseEntity<Room> updateRoom(
             includeBooked,
             pageable
         );
+        // e.g. imageSize=thumb for list views; rooms without that variant keep the original images
+        ImageVariantService.useSize(page.getContent(), imageSize);
+        imageVariantService.useImageCache(page.getContent());
+        return ResponseEntity.ok(page);
     }
 
 }
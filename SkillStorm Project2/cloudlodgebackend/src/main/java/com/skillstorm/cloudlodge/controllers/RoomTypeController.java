@@ -2,6 +2,7 @@ package com.skillstorm.cloudlodge.controllers;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -17,6 +18,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.skillstorm.cloudlodge.models.RoomType;
+import com.skillstorm.cloudlodge.services.ImageVariantService;
 import com.skillstorm.cloudlodge.services.RoomTypeService;
 import com.skillstorm.cloudlodge.services.S3Service;
 
@@ -25,11 +27,14 @@ import com.skillstorm.cloudlodge.services.S3Service;
 public class RoomTypeController {
     private final RoomTypeService roomTypeService;
     private final S3Service s3Service;
+    private final ImageVariantService imageVariantService;
     private final ObjectMapper objectMapper;
     
-    public RoomTypeController(RoomTypeService roomTypeService, S3Service s3Service) {
+    public RoomTypeController(RoomTypeService roomTypeService, S3Service s3Service,
+                              ImageVariantService imageVariantService) {
         this.roomTypeService = roomTypeService;
         this.s3Service = s3Service;
+        this.imageVariantService = imageVariantService;
         this.objectMapper = new ObjectMapper();
     }
 
@@ -78,15 +83,20 @@ public class RoomTypeController {
 
             List<String> imageUrls = new ArrayList<>();
             if (images != null) {
-                for (MultipartFile file : images) {
-                    imageUrls.add(s3Service.uploadFile(file, "images"));
-                }
+                imageUrls.addAll(s3Service.uploadFiles(images, "images"));
             }
             roomType.setImages(imageUrls);
 
             RoomType created = roomTypeService.save(roomType);
+            roomTypeService.invalidateCache();
+            imageVariantService.generateForRoomType(created.getId(), imageUrls);
             return new ResponseEntity<>(created, HttpStatus.CREATED);
         }
+        catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Error", "Too many image uploads in progress, please try again shortly")
+                    .build();
+        }
         catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
@@ -123,7 +133,7 @@ public class RoomTypeController {
             }
             
             // Remove image URLs from the database list
-            // Note: Images remain in S3 and can be cleaned up later with a scheduled job
+            // Note: Images remain in S3 until ImageGarbageCollector sweeps unreferenced objects
             if (!deleteImagesList.isEmpty()) {
                 for (String url : deleteImagesList) {
                     currentImages.remove(url);
@@ -131,20 +141,30 @@ public class RoomTypeController {
             }
 
             // Upload and add new images
+            List<String> newImages = List.of();
             if (images != null && !images.isEmpty()) {
-                for (MultipartFile file : images) {
-                    String url = s3Service.uploadFile(file, "images");
-                    currentImages.add(url);
-                }
+                newImages = s3Service.uploadFiles(images, "images");
+                currentImages.addAll(newImages);
             }
 
             // Set the updated images list back on the roomType
             roomType.setImages(currentImages);
+
+            // Keep the resized copies of images that are still there (the client never sends them)
+            roomTypeService.getRoomTypeById(id).ifPresent(existing ->
+                roomType.setImageVariants(ImageVariantService.retain(existing.getImageVariants(), currentImages)));
             
             RoomType updatedRoomType = roomTypeService.save(roomType);
+            roomTypeService.invalidateCache();
+            imageVariantService.generateForRoomType(id, newImages);
             
             return new ResponseEntity<>(updatedRoomType, HttpStatus.OK);
         }
+        catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Error", "Too many image uploads in progress, please try again shortly")
+                    .build();
+        }
         catch (Exception e) {
             return ResponseEntity.internalServerError()
                     .header("Error", "Sorry! We have an internal Error! Please check back later.")
@@ -157,6 +177,7 @@ public class RoomTypeController {
     public ResponseEntity<Void> deleteRoomType(@PathVariable String id) {
         try {
             roomTypeService.delete(id);
+            roomTypeService.invalidateCache();
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         }
         catch (Exception e) {
@@ -9,10 +9,15 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import jakarta.servlet.http.HttpServletResponse;
+
 import com.skillstorm.cloudlodge.models.User;
+import com.skillstorm.cloudlodge.models.UserPrincipal;
 import com.skillstorm.cloudlodge.services.UserService;
+import com.skillstorm.cloudlodge.utils.NdjsonWriter;
 import org.springframework.security.core.Authentication;
 
 @RestController
@@ -20,17 +25,31 @@ import org.springframework.security.core.Authentication;
 public class UserController {
 
     private final UserService userService;
-    public UserController(UserService userService) {
+    private final NdjsonWriter ndjsonWriter;
+    public UserController(UserService userService, NdjsonWriter ndjsonWriter) {
         this.userService = userService;
+        this.ndjsonWriter = ndjsonWriter;
     }
 
     // GET ALL USERS
+    // with ?cursor= or ?limit= returns one page instead, sorted by ?sort= (createdAt, email, id) and ?desc=
     @GetMapping
-    public ResponseEntity<Iterable<User>> getAllUsers() {
+    public ResponseEntity<?> getAllUsers(@RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false) Integer limit,
+                                         @RequestParam(required = false) String sort,
+                                         @RequestParam(defaultValue = "false") boolean desc) {
         try {
+            if (cursor != null || limit != null) {
+                return new ResponseEntity<>(userService.findPage(sort, desc, cursor, limit), HttpStatus.OK);
+            }
             Iterable<User> users = userService.findAll();
             return new ResponseEntity<>(users, HttpStatus.OK);
         }
+        catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .header("Error", e.getMessage())
+                    .build();
+        }
         catch (Exception e) {
             return ResponseEntity.internalServerError()
                     .header("Error", "Sorry! We have an internal Error! Please check back later.")
@@ -38,6 +57,12 @@ public class UserController {
         }
     }   
     
+    // GET all users as newline-delimited JSON (Accept: application/x-ndjson), streamed from a Mongo cursor
+    @GetMapping(produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamAllUsers(HttpServletResponse response) {
+        ndjsonWriter.write(userService::streamAll, response);
+    }
+
     // GET /users/{id}
     @GetMapping("/{id}")
     public ResponseEntity<User> getUser(@PathVariable String id) {
@@ -128,9 +153,11 @@ public class UserController {
             return ResponseEntity.status(401).build();
         }
 
-        String email = authentication.getName(); // comes from JWT
-        User user = userService.findByEmail(email)
-                .orElseThrow(() -> new IllegalArgumentException("User not found with email " + email));
+        if (!(authentication.getPrincipal() instanceof UserPrincipal principal)) {
+            return ResponseEntity.status(401).build();
+        }
+        User user = userService.findById(principal.getId())
+                .orElseThrow(() -> new IllegalArgumentException("User not found with id " + principal.getId()));
 
         return ResponseEntity.ok(user);
     }
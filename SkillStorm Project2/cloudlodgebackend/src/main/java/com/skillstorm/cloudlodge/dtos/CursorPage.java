@@ -0,0 +1,24 @@
+package com.skillstorm.cloudlodge.dtos;
+
+import java.util.List;
+
+// One page of a keyset-paginated list; pass 'next' back as ?cursor= for the following page (null on the last page)
+public class CursorPage<T> {
+
+    private List<T> items;
+    private String next;
+
+    public CursorPage() {
+    }
+
+    public CursorPage(List<T> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    public List<T> getItems() { return items; }
+    public void setItems(List<T> items) { this.items = items; }
+
+    public String getNext() { return next; }
+    public void setNext(String next) { this.next = next; }
+}
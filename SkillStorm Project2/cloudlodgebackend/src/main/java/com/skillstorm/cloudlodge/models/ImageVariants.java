@@ -0,0 +1,25 @@
+package com.skillstorm.cloudlodge.models;
+
+import java.util.Map;
+
+//resized copies of one uploaded image, keyed by size name (thumb, small, medium)
+public class ImageVariants {
+
+    private String original;              // URL of the uploaded image, matches an entry in images / imagesOverride
+    private Map<String, String> sizes;    // size name -> URL of the resized JPEG
+
+    //default constructor
+    public ImageVariants() {}
+
+    public ImageVariants(String original, Map<String, String> sizes) {
+        this.original = original;
+        this.sizes = sizes;
+    }
+
+    //getters and setters
+    public String getOriginal() { return original; }
+    public void setOriginal(String original) { this.original = original; }
+
+    public Map<String, String> getSizes() { return sizes; }
+    public void setSizes(Map<String, String> sizes) { this.sizes = sizes; }
+}
@@ -0,0 +1,42 @@
+package com.skillstorm.cloudlodge.models;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+//pre-aggregated SUCCEEDED income per hour / per day, kept up to date by the Stripe webhook handlers
+@Document(collection = "incomeRollups")
+@CompoundIndex(name = "granularity_bucketStart", def = "{'granularity': 1, 'bucketStart': 1}")
+public class IncomeBucket {
+
+    @Id
+    private String id;                // granularity + bucket start, ex: HOUR:2025-03-15T14:00:00Z, DAY:2025-03-15
+
+    private Granularity granularity;
+    public enum Granularity {HOUR, DAY}
+
+    private Instant bucketStart;      // hour buckets are UTC hours, day buckets start at local midnight
+    private Double total;             // sum of SUCCEEDED payment amounts in the bucket
+    private Long count;               // number of SUCCEEDED payments in the bucket
+
+    //default constructor
+    public IncomeBucket() {}
+
+    //getters and setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public Granularity getGranularity() { return granularity; }
+    public void setGranularity(Granularity granularity) { this.granularity = granularity; }
+
+    public Instant getBucketStart() { return bucketStart; }
+    public void setBucketStart(Instant bucketStart) { this.bucketStart = bucketStart; }
+
+    public Double getTotal() { return total; }
+    public void setTotal(Double total) { this.total = total; }
+
+    public Long getCount() { return count; }
+    public void setCount(Long count) { this.count = count; }
+}
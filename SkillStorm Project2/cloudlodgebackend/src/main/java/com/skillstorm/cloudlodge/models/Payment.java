@@ -4,6 +4,7 @@ import java.time.Instant;
 
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 //stores all payment transactions for reservations
@@ -13,7 +14,9 @@ public class Payment {
     @Id
     private String id;
 
+    @Indexed
     private String reservationId;
+    @Indexed(unique = true, sparse = true)
     private String transactionId;     // Stripe charge ID (ex: txn_123abc)
     private String paymentMethodId;   // Stripe payment method used (pm_xxx)
 
@@ -24,8 +27,13 @@ public class Payment {
     public enum Status {SUCCEEDED, FAILED, REFUNDED, PENDING}
 
     @CreatedDate
+    @Indexed
     private Instant createdAt;        // timestamp when payment record was created
 
+    private Boolean rollupCounted;    // whether the amount is currently in the income rollups
+    private Integer rollupGeneration; // bumped every time rollupCounted flips (see IncomeRollupService.sync)
+    private Instant rollupPendingSince; // set while a flip is being written to the rollup buckets
+
     //default constructor
     public Payment() {}
 
@@ -53,4 +61,13 @@ public class Payment {
 
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public Boolean getRollupCounted() { return rollupCounted; }
+    public void setRollupCounted(Boolean rollupCounted) { this.rollupCounted = rollupCounted; }
+
+    public Integer getRollupGeneration() { return rollupGeneration; }
+    public void setRollupGeneration(Integer rollupGeneration) { this.rollupGeneration = rollupGeneration; }
+
+    public Instant getRollupPendingSince() { return rollupPendingSince; }
+    public void setRollupPendingSince(Instant rollupPendingSince) { this.rollupPendingSince = rollupPendingSince; }
 }
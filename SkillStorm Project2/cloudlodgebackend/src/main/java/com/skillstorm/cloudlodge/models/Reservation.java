@@ -5,18 +5,25 @@ import java.time.LocalDate;
 
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 //stores all reservation records for guests booking rooms
 @Document(collection = "reservations")
+@CompoundIndex(name = "status_holdExpiresAt", def = "{'status': 1, 'holdExpiresAt': 1}")
+//findByRoomUnitId, plus date range filters on one room without a fetch per reservation
+@CompoundIndex(name = "roomUnit_checkIn_checkOut", def = "{'roomUnitId': 1, 'checkInDate': 1, 'checkOutDate': 1}")
 public class Reservation {
 
     @Id
     private String id;
 
+    @Indexed
     private String userId;            // user who booked the room
     private String roomUnitId;        // specific physical room (Room)
     
+    @Indexed                          // findOverlappingReservations / findByCheckInDateBetween
     private LocalDate checkInDate;    // YYYY-MM-DD
     private LocalDate checkOutDate;   // YYYY-MM-DD
     private Integer numGuests;        // number of guests staying
@@ -28,7 +35,14 @@ public class Reservation {
 
     private String paymentId;
 
+    private Instant holdExpiresAt;    // PENDING_PAYMENT only: nights are released if unpaid by then
+
+    @Indexed(sparse = true)           // listed on the dashboard until staff update the reservation
+    private Boolean needsAttention;   // true when it is in a state only a person can fix, ex: paid but its nights are taken
+    private String attentionReason;   // what went wrong, shown next to it on the dashboard
+
     @CreatedDate
+    @Indexed                          // cursor pages sorted by createdAt
     private Instant createdAt;
 
     //default constructor
@@ -62,6 +76,15 @@ public class Reservation {
     public String getPaymentId() { return paymentId; }
     public void setPaymentId(String paymentId) { this.paymentId = paymentId; }
 
+    public Instant getHoldExpiresAt() { return holdExpiresAt; }
+    public void setHoldExpiresAt(Instant holdExpiresAt) { this.holdExpiresAt = holdExpiresAt; }
+
+    public Boolean getNeedsAttention() { return needsAttention; }
+    public void setNeedsAttention(Boolean needsAttention) { this.needsAttention = needsAttention; }
+
+    public String getAttentionReason() { return attentionReason; }
+    public void setAttentionReason(String attentionReason) { this.attentionReason = attentionReason; }
+
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
 }
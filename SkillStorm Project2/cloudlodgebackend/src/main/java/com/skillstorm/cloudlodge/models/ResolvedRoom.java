@@ -10,6 +10,7 @@ public class ResolvedRoom {
     private List<String> amenities;
     private String description;
     private List<String> images;
+    private List<ImageVariants> imageVariants;
     private Integer maxGuests;
     private String roomTypeId;
     private String roomCategory;
@@ -56,6 +57,9 @@ public class ResolvedRoom {
     public List<String> getImages() { return images; }
     public void setImages(List<String> images) { this.images = images; }
 
+    public List<ImageVariants> getImageVariants() { return imageVariants; }
+    public void setImageVariants(List<ImageVariants> imageVariants) { this.imageVariants = imageVariants; }
+
     public Integer getMaxGuests() { return maxGuests; }
     public void setMaxGuests(Integer maxGuests) { this.maxGuests = maxGuests; }
 
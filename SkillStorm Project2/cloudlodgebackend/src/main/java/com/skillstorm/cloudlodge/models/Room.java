@@ -3,9 +3,14 @@ package com.skillstorm.cloudlodge.models;
 import java.util.List;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "rooms")
+//findByRoomNumber and findByRoomNumberAndIsActive
+@CompoundIndex(name = "roomNumber_isActive", def = "{'roomNumber': 1, 'isActive': 1}")
+//cursor pages of /rooms/search walk (roomNumber, _id)
+@CompoundIndex(name = "roomNumber_id", def = "{'roomNumber': 1, '_id': 1}")
 public class Room {
 
     @Id
@@ -19,6 +24,7 @@ public class Room {
     private List<String> amenitiesOverride;
     private String descriptionOverride;
     private List<String> imagesOverride;
+    private List<ImageVariants> imageVariantsOverride;   // resized copies of imagesOverride, filled in after upload
     private Integer maxGuestsOverride;
 
     //default constructor
@@ -49,6 +55,9 @@ public class Room {
     public List<String> getImagesOverride() { return imagesOverride; }
     public void setImagesOverride(List<String> imagesOverride) { this.imagesOverride = imagesOverride; }
 
+    public List<ImageVariants> getImageVariantsOverride() { return imageVariantsOverride; }
+    public void setImageVariantsOverride(List<ImageVariants> imageVariantsOverride) { this.imageVariantsOverride = imageVariantsOverride; }
+
     public Integer getMaxGuestsOverride() { return maxGuestsOverride; }
     public void setMaxGuestsOverride(Integer maxGuestsOverride) { this.maxGuestsOverride = maxGuestsOverride; }
 }
@@ -3,18 +3,24 @@ package com.skillstorm.cloudlodge.models;
 import java.time.LocalDate;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 //tracks availability per room per day
-//each booked date for a room gets its own document
+//each booked date for a room gets its own document (nightly storage mode, see RoomStay for interval mode)
+//the unique (roomUnitId, date) index is what stops a night being booked twice
 @Document(collection = "roomAvailability")
+@CompoundIndex(name = "roomUnit_date_unique", def = "{'roomUnitId': 1, 'date': 1}", unique = true)
 public class RoomAvailability {
 
     @Id
     private String id;
 
     private String roomUnitId;
+    @Indexed
     private LocalDate date;         // single booked date (YYYY-MM-DD)
+    @Indexed
     private String reservationId;   // reservation that owns this date
 
     //default constructor
@@ -0,0 +1,53 @@
+package com.skillstorm.cloudlodge.models;
+
+import java.time.LocalDate;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+//one booked [checkIn, checkOut) interval per reservation and room (app.availability.storageMode=interval)
+//replaces the one-document-per-night rows in roomAvailability
+//overlap with [start, end) is checkIn < end && checkOut > start
+@Document(collection = "roomStays")
+@CompoundIndex(name = "roomUnit_checkIn_unique", def = "{'roomUnitId': 1, 'checkIn': 1}", unique = true)
+@CompoundIndex(name = "roomUnit_checkIn_checkOut", def = "{'roomUnitId': 1, 'checkIn': 1, 'checkOut': 1}")
+@CompoundIndex(name = "checkIn_checkOut", def = "{'checkIn': 1, 'checkOut': 1}")
+public class RoomStay {
+
+    @Id
+    private String id;
+
+    private String roomUnitId;
+    private LocalDate checkIn;      // first booked night
+    private LocalDate checkOut;     // day after the last booked night (exclusive)
+    @Indexed
+    private String reservationId;   // reservation that owns these nights
+
+    //default constructor
+    public RoomStay() {}
+
+    public RoomStay(String roomUnitId, LocalDate checkIn, LocalDate checkOut, String reservationId) {
+        this.roomUnitId = roomUnitId;
+        this.checkIn = checkIn;
+        this.checkOut = checkOut;
+        this.reservationId = reservationId;
+    }
+
+    //getters and setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getRoomUnitId() { return roomUnitId; }
+    public void setRoomUnitId(String roomUnitId) { this.roomUnitId = roomUnitId; }
+
+    public LocalDate getCheckIn() { return checkIn; }
+    public void setCheckIn(LocalDate checkIn) { this.checkIn = checkIn; }
+
+    public LocalDate getCheckOut() { return checkOut; }
+    public void setCheckOut(LocalDate checkOut) { this.checkOut = checkOut; }
+
+    public String getReservationId() { return reservationId; }
+    public void setReservationId(String reservationId) { this.reservationId = reservationId; }
+}
@@ -18,6 +18,7 @@ public class RoomType {
     private List<String> amenities;
     private String description;
     private List<String> images;
+    private List<ImageVariants> imageVariants;   // resized copies of images, filled in after upload
 
     //default constructor
     public RoomType() {}
@@ -43,4 +44,7 @@ public class RoomType {
 
     public List<String> getImages() { return images; }
     public void setImages(List<String> images) { this.images = images; }
+
+    public List<ImageVariants> getImageVariants() { return imageVariants; }
+    public void setImageVariants(List<ImageVariants> imageVariants) { this.imageVariants = imageVariants; }
 }
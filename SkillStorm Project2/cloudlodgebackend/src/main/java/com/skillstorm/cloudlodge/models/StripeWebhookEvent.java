@@ -0,0 +1,72 @@
+package com.skillstorm.cloudlodge.models;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+//inbox of verified Stripe webhook events, one document per Stripe event id so redeliveries are dropped
+@Document(collection = "stripeWebhookEvents")
+@CompoundIndex(name = "status_receivedAt", def = "{'status': 1, 'receivedAt': 1}")
+//"is an earlier event for this key still unprocessed" check before each event is processed
+@CompoundIndex(name = "orderingKey_receivedAt", def = "{'orderingKey': 1, 'receivedAt': 1}")
+public class StripeWebhookEvent {
+
+    @Id
+    private String id;                // Stripe event id (evt_xxx)
+
+    private String type;              // payment_intent.succeeded, payment_method.attached, etc.
+    private String orderingKey;       // events with the same key are processed in order (reservation id when known)
+    private String payload;           // raw event JSON as received
+
+    private Status status;
+    public enum Status {RECEIVED, PROCESSING, PROCESSED, FAILED}
+
+    private Integer attempts;
+    private String lastError;
+    private Instant nextAttemptAt;    // FAILED only: not retried before this (backoff grows with attempts)
+
+    private Instant receivedAt;
+    private Instant claimedAt;        // when a worker picked it up, used to find stuck events
+    @Indexed(expireAfter = "30d")     // processed events are only kept for redelivery dedup, Stripe retries for 3 days
+    private Instant processedAt;
+
+    //default constructor
+    public StripeWebhookEvent() {}
+
+    //getters and setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public String getOrderingKey() { return orderingKey; }
+    public void setOrderingKey(String orderingKey) { this.orderingKey = orderingKey; }
+
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
+    public Integer getAttempts() { return attempts; }
+    public void setAttempts(Integer attempts) { this.attempts = attempts; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+
+    public Instant getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(Instant nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+
+    public Instant getReceivedAt() { return receivedAt; }
+    public void setReceivedAt(Instant receivedAt) { this.receivedAt = receivedAt; }
+
+    public Instant getClaimedAt() { return claimedAt; }
+    public void setClaimedAt(Instant claimedAt) { this.claimedAt = claimedAt; }
+
+    public Instant getProcessedAt() { return processedAt; }
+    public void setProcessedAt(Instant processedAt) { this.processedAt = processedAt; }
+}
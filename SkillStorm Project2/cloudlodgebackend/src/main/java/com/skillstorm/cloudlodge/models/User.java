@@ -5,6 +5,7 @@ import java.util.List;
 
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "users")
@@ -15,18 +16,21 @@ public class User {
     
     private String authProvider;     // google, facebook, etc.
     private String providerId;
+    @Indexed(unique = true, sparse = true)
     private String email;
     private String password;
     private String fullName;
     private Role role;
     public enum Role {GUEST,ADMIN,MANAGER}; //only allow 3 types of user roles
     private String phone;
+    @Indexed(sparse = true)
     private String stripeCustomerId;
     private List<SavedPaymentMethod> savedPaymentMethods;
     private Address billingAddress;
     private Preferences preferences;
 
     @CreatedDate
+    @Indexed
     private Instant createdAt;
 
     public static class SavedPaymentMethod {
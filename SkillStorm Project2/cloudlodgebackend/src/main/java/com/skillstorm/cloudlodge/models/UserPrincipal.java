@@ -0,0 +1,37 @@
+package com.skillstorm.cloudlodge.models;
+
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+//slim, read-only snapshot of the logged in user kept in the SecurityContext
+//load the full User by id when more than this is needed
+public final class UserPrincipal implements AuthenticatedPrincipal {
+
+    private final String id;
+    private final String email;
+    private final User.Role role;
+    private final String stripeCustomerId;
+
+    public UserPrincipal(String id, String email, User.Role role, String stripeCustomerId) {
+        this.id = id;
+        this.email = email;
+        this.role = role;
+        this.stripeCustomerId = stripeCustomerId;
+    }
+
+    public static UserPrincipal from(User user) {
+        return new UserPrincipal(user.getId(), user.getEmail(), user.getRole(), user.getStripeCustomerId());
+    }
+
+    //getters
+    public String getId() { return id; }
+
+    public String getEmail() { return email; }
+
+    public User.Role getRole() { return role; }
+
+    public String getStripeCustomerId() { return stripeCustomerId; }
+
+    //Authentication.getName() resolves to the email
+    @Override
+    public String getName() { return email; }
+}
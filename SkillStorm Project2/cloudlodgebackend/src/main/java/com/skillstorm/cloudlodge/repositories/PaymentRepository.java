@@ -1,5 +1,6 @@
 package com.skillstorm.cloudlodge.repositories;
 
+import java.time.Instant;
 import java.util.List;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
@@ -15,4 +16,7 @@ public interface PaymentRepository extends MongoRepository<Payment, String> {
 
     // Find payment by Stripe transaction ID
     Payment findByTransactionId(String transactionId);
+
+    // Find payments created after a point in time
+    List<Payment> findByCreatedAtAfter(Instant createdAt);
 }
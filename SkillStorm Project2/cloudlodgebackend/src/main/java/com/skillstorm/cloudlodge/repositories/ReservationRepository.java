@@ -18,6 +18,9 @@ public interface ReservationRepository extends MongoRepository<Reservation, Stri
     // find all reservations for a specific room unit
     List<Reservation> findByRoomUnitId(String roomUnitId);
 
+    // reservations flagged for staff (sparse index on needsAttention)
+    List<Reservation> findByNeedsAttentionTrue();
+
     // find reservations that overlap a date range (useful for searching availability)
     List<Reservation> findByCheckInDateBetween(LocalDate start, LocalDate end);
 
@@ -29,7 +32,7 @@ public interface ReservationRepository extends MongoRepository<Reservation, Stri
     // find reservations where check-out falls within a range
     List<Reservation> findByCheckOutDateBetween(LocalDate start, LocalDate end);
 
-    // find reservations that overlap a date range for a specific room unit
+    // find reservations that overlap a date range (whole hotel)
     @Query("""
     {
     'checkInDate': { $lt: ?1 },
@@ -41,4 +44,19 @@ public interface ReservationRepository extends MongoRepository<Reservation, Stri
         LocalDate end
     );
 
+    // find active reservations on one room unit that overlap [start, end); uses the roomUnitId/checkIn/checkOut index
+    @Query("""
+    {
+    'roomUnitId': ?0,
+    'status': { $ne: 'CANCELLED' },
+    'checkInDate': { $lt: ?2 },
+    'checkOutDate': { $gt: ?1 }
+    }
+    """)
+    List<Reservation> findOverlappingReservationsForRoom(
+        String roomUnitId,
+        LocalDate start,
+        LocalDate end
+    );
+
 }
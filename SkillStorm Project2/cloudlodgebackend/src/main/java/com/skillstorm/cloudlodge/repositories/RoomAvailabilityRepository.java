@@ -2,6 +2,7 @@ package com.skillstorm.cloudlodge.repositories;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
@@ -16,7 +17,11 @@ public interface RoomAvailabilityRepository extends MongoRepository<RoomAvailabi
     List<RoomAvailability> findByDate(LocalDate date);
     List<RoomAvailability> findByReservationId(String reservationId);
 
-    void deleteByReservationId(String reservationId);
+    // returns the removed documents so callers can keep the availability index in sync
+    List<RoomAvailability> deleteByReservationId(String reservationId);
     @Query("{ 'date': { $gte: ?0, $lt: ?1 } }")
     List<RoomAvailability> findBookedInRange(LocalDate start,LocalDate end);
+
+    // cursor over the whole collection (caller must close the stream)
+    Stream<RoomAvailability> streamAllBy();
 }
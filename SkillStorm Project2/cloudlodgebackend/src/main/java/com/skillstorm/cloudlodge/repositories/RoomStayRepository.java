@@ -0,0 +1,31 @@
+package com.skillstorm.cloudlodge.repositories;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.skillstorm.cloudlodge.models.RoomStay;
+
+@Repository
+public interface RoomStayRepository extends MongoRepository<RoomStay, String> {
+
+    List<RoomStay> findByRoomUnitId(String roomUnitId);
+    List<RoomStay> findByReservationId(String reservationId);
+
+    // returns the removed documents so callers can keep the availability index in sync
+    List<RoomStay> deleteByReservationId(String reservationId);
+
+    // stays with at least one night in [start, end)
+    @Query("{ 'checkIn': { $lt: ?1 }, 'checkOut': { $gt: ?0 } }")
+    List<RoomStay> findOverlapping(LocalDate start, LocalDate end);
+
+    @Query("{ 'roomUnitId': ?0, 'checkIn': { $lt: ?2 }, 'checkOut': { $gt: ?1 } }")
+    List<RoomStay> findOverlappingForRoom(String roomUnitId, LocalDate start, LocalDate end);
+
+    // cursor over the whole collection (caller must close the stream)
+    Stream<RoomStay> streamAllBy();
+}
@@ -1,6 +1,7 @@
 package com.skillstorm.cloudlodge.repositories;
 
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
@@ -12,4 +13,7 @@ public interface UserRepository extends MongoRepository<User, String> {
     Optional<User> findByEmail(String email);
 
     Optional<User> findByStripeCustomerId(String stripeCustomerId);
+
+    // cursor over the whole collection (caller must close the stream)
+    Stream<User> streamAllBy();
 }
@@ -5,6 +5,7 @@ import com.skillstorm.cloudlodge.models.RegisterRequest;
 import com.skillstorm.cloudlodge.models.User;
 import com.skillstorm.cloudlodge.repositories.UserRepository;
 import com.skillstorm.cloudlodge.utils.JwtUtils;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -74,8 +75,12 @@ public class AuthService {
         user.setBillingAddress(new User.Address());
         user.setSavedPaymentMethods(new ArrayList<>());
 
-        // 4. Persist to MongoDB
-        return userRepository.save(user);
+        // 4. Persist to MongoDB; the unique email index catches a registration racing the check above
+        try {
+            return userRepository.save(user);
+        } catch (DuplicateKeyException e) {
+            throw new RuntimeException("Email already in use");
+        }
     }
 
 
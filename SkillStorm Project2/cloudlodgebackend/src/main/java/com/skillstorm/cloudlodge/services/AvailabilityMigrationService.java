@@ -0,0 +1,219 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.skillstorm.cloudlodge.models.Reservation;
+import com.skillstorm.cloudlodge.models.RoomAvailability;
+import com.skillstorm.cloudlodge.models.RoomStay;
+
+// Converts the per-night roomAvailability rows into roomStays intervals.
+// Rows are streamed in (roomUnitId, date) order, which the unique index already provides, and consecutive
+// nights of the same reservation are merged into one [checkIn, checkOut) stay. Stays are upserted on
+// (roomUnitId, checkIn), so the migration can be run again safely.
+// It only runs in interval mode: nightly mode never updates roomStays, so stays written there would go stale
+// as soon as a reservation is moved or released. Cutover order:
+//  1. restart with app.availability.storageMode=interval; rows not migrated yet still count as booked
+//  2. run it with deleteNightly: no nightly rows are written any more, and only the rows this run converted
+//     (by _id, batch by batch once their stays are written) are deleted
+// Reservations keep changing while it runs: a batch only writes the stays whose rows are all still there and
+// whose reservation still exists and is not cancelled, and it checks the rows again once the stays are written,
+// backing out any stay whose reservation was moved or released in the meantime (both drop its nightly rows).
+@Service
+public class AvailabilityMigrationService {
+
+    private static final Logger log = LoggerFactory.getLogger(AvailabilityMigrationService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final RoomAvailabilityService roomAvailabilityService;
+
+    @Value("${app.availability.migrationBatchSize:500}")
+    private int batchSize;
+
+    public AvailabilityMigrationService(MongoTemplate mongoTemplate, RoomAvailabilityService roomAvailabilityService) {
+        this.mongoTemplate = mongoTemplate;
+        this.roomAvailabilityService = roomAvailabilityService;
+    }
+
+    // Returns row/stay counts; with deleteNightly the migrated roomAvailability rows are removed afterwards
+    public Map<String, Object> migrateToIntervals(boolean deleteNightly) {
+        if (!roomAvailabilityService.isIntervalMode()) {
+            throw new IllegalStateException("Switch app.availability.storageMode to interval before migrating nightly rows");
+        }
+        long started = System.currentTimeMillis();
+        Query query = new Query().with(Sort.by("roomUnitId", "date"));
+        query.fields().include("roomUnitId", "date", "reservationId");
+
+        StayWriter writer = new StayWriter(deleteNightly);
+        long rows = 0;
+        try (Stream<RoomAvailability> nights = mongoTemplate.stream(query, RoomAvailability.class)) {
+            for (RoomAvailability night : (Iterable<RoomAvailability>) nights::iterator) {
+                if (night.getRoomUnitId() == null || night.getDate() == null) continue;
+                writer.add(night);
+                rows++;
+            }
+        }
+        writer.finish();
+
+        log.info("Migrated {} availability rows into {} stays in {} ms ({} stays skipped, {} rows deleted)",
+                rows, writer.stays, System.currentTimeMillis() - started, writer.skipped, writer.deleted);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("nightlyRows", rows);
+        report.put("stays", writer.stays);
+        report.put("skippedStays", writer.skipped);
+        report.put("deletedRows", writer.deleted);
+        return report;
+    }
+
+    // One stay to be written and the nightly rows it replaces
+    private record Run(String roomUnitId, String reservationId, LocalDate checkIn, LocalDate checkOut, List<String> rowIds) {
+    }
+
+    // Builds the current run of nights and flushes finished stays as bulk upserts;
+    // with deleteNightly the rows behind each flushed batch are deleted right after it is written
+    private final class StayWriter {
+        private final boolean deleteNightly;
+        private final List<Run> pending = new ArrayList<>();
+        private List<String> runRowIds = new ArrayList<>();
+        private String roomUnitId;
+        private String reservationId;
+        private LocalDate checkIn;
+        private LocalDate checkOut;
+        private long stays;
+        private long skipped;
+        private long deleted;
+
+        StayWriter(boolean deleteNightly) {
+            this.deleteNightly = deleteNightly;
+        }
+
+        void add(RoomAvailability night) {
+            boolean continues = roomUnitId != null
+                    && roomUnitId.equals(night.getRoomUnitId())
+                    && Objects.equals(reservationId, night.getReservationId())
+                    && checkOut.equals(night.getDate());
+            if (continues) {
+                checkOut = checkOut.plusDays(1);
+                runRowIds.add(night.getId());
+                return;
+            }
+            flushRun();
+            runRowIds.add(night.getId());
+            roomUnitId = night.getRoomUnitId();
+            reservationId = night.getReservationId();
+            checkIn = night.getDate();
+            checkOut = checkIn.plusDays(1);
+        }
+
+        void finish() {
+            flushRun();
+            flushBatch();
+        }
+
+        private void flushRun() {
+            if (roomUnitId == null) return;
+            pending.add(new Run(roomUnitId, reservationId, checkIn, checkOut, runRowIds));
+            runRowIds = new ArrayList<>();
+            roomUnitId = null;
+            if (pending.size() >= batchSize) flushBatch();
+        }
+
+        private void flushBatch() {
+            if (pending.isEmpty()) return;
+            List<String> rowIds = new ArrayList<>();
+            Set<String> reservationIds = new HashSet<>();
+            for (Run run : pending) {
+                rowIds.addAll(run.rowIds());
+                if (run.reservationId() != null) reservationIds.add(run.reservationId());
+            }
+
+            // rows of cancelled or deleted reservations are leftovers and get no stay
+            Set<String> live = liveReservationIds(reservationIds);
+            Set<String> remaining = remainingRowIds(rowIds);
+            List<Run> writes = new ArrayList<>();
+            for (Run run : pending) {
+                boolean owned = run.reservationId() == null || live.contains(run.reservationId());
+                if (owned && remaining.containsAll(run.rowIds())) {
+                    writes.add(run);
+                } else {
+                    skipped++;
+                }
+            }
+
+            if (!writes.isEmpty()) {
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RoomStay.class);
+                for (Run run : writes) {
+                    bulk.upsert(Query.query(Criteria.where("roomUnitId").is(run.roomUnitId()).and("checkIn").is(run.checkIn())),
+                            new Update().set("checkOut", run.checkOut()).set("reservationId", run.reservationId()));
+                }
+                bulk.execute();
+                stays += writes.size();
+                backOutReleased(writes);
+            }
+
+            if (deleteNightly) {
+                deleted += mongoTemplate.remove(Query.query(Criteria.where("id").in(rowIds)),
+                        RoomAvailability.class).getDeletedCount();
+            }
+            pending.clear();
+        }
+
+        // A reservation moved or released while its stay was being written has lost its rows by now;
+        // anything released after this check finds the stay and removes it
+        private void backOutReleased(List<Run> writes) {
+            List<String> rowIds = new ArrayList<>();
+            for (Run run : writes) {
+                rowIds.addAll(run.rowIds());
+            }
+            Set<String> remaining = remainingRowIds(rowIds);
+            for (Run run : writes) {
+                if (run.reservationId() == null || remaining.containsAll(run.rowIds())) continue;
+                mongoTemplate.remove(Query.query(Criteria.where("roomUnitId").is(run.roomUnitId())
+                        .and("checkIn").is(run.checkIn())
+                        .and("reservationId").is(run.reservationId())), RoomStay.class);
+                stays--;
+                skipped++;
+            }
+        }
+
+        private Set<String> liveReservationIds(Set<String> reservationIds) {
+            Set<String> live = new HashSet<>();
+            if (reservationIds.isEmpty()) return live;
+            Query query = Query.query(Criteria.where("id").in(reservationIds).and("status").ne(Reservation.Status.CANCELLED));
+            query.fields().include("id");
+            for (Reservation reservation : mongoTemplate.find(query, Reservation.class)) {
+                live.add(reservation.getId());
+            }
+            return live;
+        }
+
+        private Set<String> remainingRowIds(List<String> rowIds) {
+            Query query = Query.query(Criteria.where("id").in(rowIds));
+            query.fields().include("id");
+            Set<String> remaining = new HashSet<>();
+            for (RoomAvailability row : mongoTemplate.find(query, RoomAvailability.class)) {
+                remaining.add(row.getId());
+            }
+            return remaining;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.annotation.RequestScope;
+
+import com.skillstorm.cloudlodge.models.Room;
+import com.skillstorm.cloudlodge.models.User;
+import com.skillstorm.cloudlodge.repositories.RoomRepository;
+import com.skillstorm.cloudlodge.repositories.UserRepository;
+
+// Per-request lookup cache for enriching lists with rooms and users.
+// Collect the ids first and load them in one findAllById ($in) call instead of one findById per row;
+// anything already loaded during the same request is not fetched again.
+@Service
+@RequestScope
+public class BatchLoader {
+
+    private final RoomRepository roomRepository;
+    private final UserRepository userRepository;
+
+    private final Map<String, Room> rooms = new HashMap<>();
+    private final Map<String, User> users = new HashMap<>();
+    private final Set<String> missingRooms = new HashSet<>();
+    private final Set<String> missingUsers = new HashSet<>();
+
+    public BatchLoader(RoomRepository roomRepository, UserRepository userRepository) {
+        this.roomRepository = roomRepository;
+        this.userRepository = userRepository;
+    }
+
+    // Rooms for the given ids, keyed by id; ids with no room are left out
+    public synchronized Map<String, Room> loadRooms(Collection<String> ids) {
+        return load(ids, rooms, missingRooms, roomRepository, Room::getId);
+    }
+
+    // Users for the given ids, keyed by id; ids with no user are left out
+    public synchronized Map<String, User> loadUsers(Collection<String> ids) {
+        return load(ids, users, missingUsers, userRepository, User::getId);
+    }
+
+    public synchronized Room getRoom(String id) {
+        return id == null ? null : loadRooms(Set.of(id)).get(id);
+    }
+
+    public synchronized User getUser(String id) {
+        return id == null ? null : loadUsers(Set.of(id)).get(id);
+    }
+
+    private static <T> Map<String, T> load(Collection<String> ids, Map<String, T> cache, Set<String> missing,
+                                           CrudRepository<T, String> repository, Function<T, String> idOf) {
+        Set<String> wanted = ids.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+
+        Set<String> toFetch = new HashSet<>(wanted);
+        toFetch.removeAll(cache.keySet());
+        toFetch.removeAll(missing);
+        if (!toFetch.isEmpty()) {
+            for (T entity : repository.findAllById(toFetch)) {
+                cache.put(idOf.apply(entity), entity);
+            }
+            // remember misses so they are not queried again in this request
+            toFetch.removeAll(cache.keySet());
+            missing.addAll(toFetch);
+        }
+
+        Map<String, T> result = new HashMap<>();
+        for (String id : wanted) {
+            T entity = cache.get(id);
+            if (entity != null) result.put(id, entity);
+        }
+        return result;
+    }
+}
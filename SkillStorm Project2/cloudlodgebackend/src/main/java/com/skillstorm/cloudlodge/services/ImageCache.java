@@ -0,0 +1,251 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+// Size-bounded local disk cache for S3 objects, so repeated image reads skip S3 and never sit on the heap.
+// Files are named after the object's ETag (content-addressed), so keys with identical content share one file.
+// Keys are evicted least recently used first; a file is deleted once no cached key points to it
+// and no request is still serving it (get() pins the file until unpin()).
+// Uploaded keys are never overwritten (UUID names), so cached entries do not need revalidating.
+@Service
+public class ImageCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageCache.class);
+
+    private final S3Service s3Service;
+    private final Path directory;
+    private final long maxBytes;
+
+    // key -> entry in access order (LRU)
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // file name -> number of keys pointing to it
+    private final Map<String, Integer> fileRefs = new HashMap<>();
+    // file name -> number of requests serving it; evicted files are only deleted once this drops to zero
+    private final Map<String, Integer> pins = new HashMap<>();
+    private final Set<String> pendingDeletes = new HashSet<>();
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private long totalBytes;
+
+    public ImageCache(S3Service s3Service,
+                      @Value("${app.images.cacheDir:${java.io.tmpdir}/cloudlodge-image-cache}") String directory,
+                      @Value("${app.images.cacheMaxBytes:536870912}") long maxBytes) {
+        this.s3Service = s3Service;
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    // The key -> file index lives in memory, so files left over from a previous run are dropped
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Could not remove stale cache file {}", file, e);
+                }
+            });
+        }
+    }
+
+    // Cached copy of the object, downloading it on a miss. Concurrent misses for the same key share one download.
+    // The returned file is pinned so eviction cannot delete it while it is served; call unpin(entry) when done.
+    public Entry get(String key) throws IOException {
+        Entry cached = lookup(key);
+        if (cached != null) return cached;
+
+        CompletableFuture<Entry> download = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, download);
+        if (existing != null) {
+            try {
+                existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException io) throw io;
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw e;
+            }
+            // pin through the index: the shared download may already have been evicted again
+            Entry shared = lookup(key);
+            return shared != null ? shared : get(key);
+        }
+
+        try {
+            Entry loaded = fetch(key);
+            download.complete(loaded);
+            return loaded;
+        } catch (IOException | RuntimeException e) {
+            download.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    private synchronized Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        if (!Files.exists(entry.file)) {
+            // removed from under us (ex: tmp cleaner); forget it and download again
+            remove(key);
+            return null;
+        }
+        pin(entry);
+        return entry;
+    }
+
+    public synchronized void unpin(Entry entry) {
+        String fileName = entry.file.getFileName().toString();
+        Integer left = pins.computeIfPresent(fileName, (name, count) -> count > 1 ? count - 1 : null);
+        if (left == null && pendingDeletes.remove(fileName)) {
+            delete(entry.file);
+        }
+    }
+
+    private synchronized void pin(Entry entry) {
+        pins.merge(entry.file.getFileName().toString(), 1, Integer::sum);
+    }
+
+    private Entry fetch(String key) throws IOException {
+        try (ResponseInputStream<GetObjectResponse> in = s3Service.openObject(key)) {
+            GetObjectResponse response = in.response();
+            String fileName = fileName(response.eTag(), key);
+
+            // another key with the same content already has the file: reuse it, checked and registered
+            // under one lock so an eviction cannot delete it in between
+            Entry reused = registerExisting(key, fileName, response);
+            if (reused != null) {
+                in.abort();
+                return reused;
+            }
+
+            // write to a temp file first so a half written download is never served
+            Path tmp = Files.createTempFile(directory, "download-", ".tmp");
+            try {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+                return registerDownload(key, fileName, tmp, response);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private synchronized Entry registerExisting(String key, String fileName, GetObjectResponse response) throws IOException {
+        Path file = directory.resolve(fileName);
+        if (!fileRefs.containsKey(fileName) || !Files.exists(file)) return null;
+        Entry entry = new Entry(file, response.eTag(), response.contentType(), Files.size(file), response.lastModified());
+        register(key, fileName, entry);
+        pin(entry);
+        return entry;
+    }
+
+    // The rename is atomic, so a request still reading an older copy keeps its open file
+    private synchronized Entry registerDownload(String key, String fileName, Path tmp, GetObjectResponse response) throws IOException {
+        Path file = directory.resolve(fileName);
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Entry entry = new Entry(file, response.eTag(), response.contentType(), Files.size(file), response.lastModified());
+        register(key, fileName, entry);
+        pin(entry);
+        return entry;
+    }
+
+    private synchronized void register(String key, String fileName, Entry entry) {
+        if (entries.containsKey(key)) remove(key);
+        entries.put(key, entry);
+        Integer refs = fileRefs.merge(fileName, 1, Integer::sum);
+        if (refs == 1) {
+            totalBytes += entry.size;
+            // an evicted file waiting for its last reader is back in use
+            pendingDeletes.remove(fileName);
+        }
+
+        // evict least recently used keys, but never the one just added
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> candidate = eldest.next();
+            if (candidate.getKey().equals(key)) continue;
+            eldest.remove();
+            release(candidate.getValue());
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) release(entry);
+    }
+
+    // Drop one key's reference to its file; the file goes once nothing points to it and nobody is serving it
+    private void release(Entry entry) {
+        String fileName = entry.file.getFileName().toString();
+        Integer refs = fileRefs.computeIfPresent(fileName, (name, count) -> count > 1 ? count - 1 : null);
+        if (refs != null) return;
+        totalBytes -= entry.size;
+        if (pins.containsKey(fileName)) {
+            pendingDeletes.add(fileName);
+        } else {
+            delete(entry.file);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete cached file {}", file, e);
+        }
+    }
+
+    private static String fileName(String eTag, String key) {
+        String id = eTag != null ? eTag.replaceAll("[^A-Za-z0-9-]", "") : "";
+        // fall back to a name derived from the key when S3 gives no usable ETag
+        return id.isEmpty() ? "key-" + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) : id;
+    }
+
+    public static final class Entry {
+        private final Path file;
+        private final String eTag;
+        private final String contentType;
+        private final long size;
+        private final Instant lastModified;
+
+        Entry(Path file, String eTag, String contentType, long size, Instant lastModified) {
+            this.file = file;
+            this.eTag = eTag;
+            this.contentType = contentType;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public Path getFile() { return file; }
+        public String getETag() { return eTag; }
+        public String getContentType() { return contentType; }
+        public long getSize() { return size; }
+        public Instant getLastModified() { return lastModified; }
+    }
+}
@@ -0,0 +1,205 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.skillstorm.cloudlodge.models.Room;
+import com.skillstorm.cloudlodge.models.RoomType;
+
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+// Mark and sweep for room images that are no longer used.
+// Mark: every key referenced by roomTypes (images, imageVariants) and rooms (imagesOverride, imageVariantsOverride).
+// Sweep: walk the bucket listing and batch delete unreferenced objects older than the grace period.
+// The grace period covers uploads whose document has not been saved yet and variants still being generated.
+// Nothing is deleted if any referenced URL under the prefix matched no listed object: that means a URL the key
+// parsing does not understand, and its live object would be swept. Those URLs are reported instead.
+// The scheduled run is off unless app.images.gcEnabled=true; the dashboard endpoint defaults to a dry run.
+@Service
+public class ImageGarbageCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageGarbageCollector.class);
+
+    // DeleteObjects takes at most 1000 keys per call
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    // how many unmatched URLs the report lists
+    private static final int UNMATCHED_SAMPLE = 20;
+
+    private final MongoTemplate mongoTemplate;
+    private final S3Service s3Service;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${app.images.gcPrefix:images/}")
+    private String prefix;
+
+    @Value("${app.images.gcGraceHours:24}")
+    private long graceHours;
+
+    @Value("${app.images.gcEnabled:false}")
+    private boolean enabled;
+
+    public ImageGarbageCollector(MongoTemplate mongoTemplate, S3Service s3Service) {
+        this.mongoTemplate = mongoTemplate;
+        this.s3Service = s3Service;
+    }
+
+    @Scheduled(cron = "${app.images.gcCron:0 30 3 * * *}")
+    public void scheduledCollect() {
+        if (!enabled) return;
+        try {
+            collect(false);
+        } catch (Exception e) {
+            log.error("Image garbage collection failed", e);
+        }
+    }
+
+    // Runs one mark and sweep; with dryRun nothing is deleted, the report shows what would be.
+    // Returns null if a collection is already running.
+    public Map<String, Object> collect(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) return null;
+        try {
+            long started = System.currentTimeMillis();
+            Map<String, Set<String>> references = markReferences();
+            Set<String> referenced = new HashSet<>();
+            for (Set<String> keys : references.values()) referenced.addAll(keys);
+            Instant cutoff = Instant.now().minus(Duration.ofHours(graceHours));
+
+            // list everything first: deletion only starts once every reference is known to match an object
+            long scanned = 0;
+            Set<String> seen = new HashSet<>();
+            Map<String, Long> garbage = new LinkedHashMap<>();
+            for (S3Object object : s3Service.listObjects(prefix)) {
+                scanned++;
+                if (referenced.contains(object.key())) {
+                    seen.add(object.key());
+                    continue;
+                }
+                if (object.lastModified() == null || object.lastModified().isAfter(cutoff)) continue;
+                garbage.put(object.key(), object.size() != null ? object.size() : 0L);
+            }
+
+            List<String> unmatched = new ArrayList<>();
+            for (Map.Entry<String, Set<String>> reference : references.entrySet()) {
+                boolean inScope = reference.getValue().stream().anyMatch(key -> key.startsWith(prefix));
+                if (inScope && reference.getValue().stream().noneMatch(seen::contains)) {
+                    unmatched.add(reference.getKey());
+                }
+            }
+            boolean deleting = !dryRun && unmatched.isEmpty();
+            if (!dryRun && !unmatched.isEmpty()) {
+                log.warn("Image GC skipped deletion: {} referenced URLs match no object, ex: {}",
+                        unmatched.size(), unmatched.subList(0, Math.min(UNMATCHED_SAMPLE, unmatched.size())));
+            }
+
+            long deleted = 0;
+            long reclaimedBytes = 0;
+            long failed = 0;
+            List<String> batchKeys = new ArrayList<>(DELETE_BATCH_SIZE);
+            Map<String, Long> batchSizes = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> object : garbage.entrySet()) {
+                batchKeys.add(object.getKey());
+                batchSizes.put(object.getKey(), object.getValue());
+                if (batchKeys.size() == DELETE_BATCH_SIZE) {
+                    long[] result = sweep(batchKeys, batchSizes, !deleting);
+                    deleted += result[0];
+                    reclaimedBytes += result[1];
+                    failed += result[2];
+                    batchKeys.clear();
+                    batchSizes.clear();
+                }
+            }
+            if (!batchKeys.isEmpty()) {
+                long[] result = sweep(batchKeys, batchSizes, !deleting);
+                deleted += result[0];
+                reclaimedBytes += result[1];
+                failed += result[2];
+            }
+
+            log.info("Image GC{}: {} referenced, {} unmatched, {} scanned, {} {}, {} failed, {} bytes in {} ms",
+                    deleting ? "" : " (nothing deleted)", references.size(), unmatched.size(), scanned, deleted,
+                    deleting ? "deleted" : "unreferenced", failed, reclaimedBytes, System.currentTimeMillis() - started);
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("dryRun", dryRun);
+            report.put("deleted", deleting);
+            report.put("referenced", references.size());
+            report.put("unmatched", unmatched.size());
+            report.put("unmatchedSample", unmatched.subList(0, Math.min(UNMATCHED_SAMPLE, unmatched.size())));
+            report.put("scanned", scanned);
+            report.put(deleting ? "deletedObjects" : "unreferencedObjects", deleted);
+            report.put("failed", failed);
+            report.put("reclaimedBytes", reclaimedBytes);
+            return report;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // {deleted, reclaimedBytes, failed} for one batch
+    private long[] sweep(List<String> keys, Map<String, Long> sizes, boolean dryRun) {
+        List<String> failedKeys = dryRun ? List.of() : s3Service.deleteObjects(keys);
+        long bytes = 0;
+        for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+            bytes += entry.getValue();
+        }
+        for (String key : failedKeys) {
+            Long size = sizes.get(key);
+            if (size != null) bytes -= size;
+        }
+        return new long[] { keys.size() - failedKeys.size(), bytes, failedKeys.size() };
+    }
+
+    // referenced URL -> the keys it may stand for (see S3Service.candidateKeysFromUrl); URLs outside the bucket are skipped
+    private Map<String, Set<String>> markReferences() {
+        Map<String, Set<String>> references = new HashMap<>();
+        addReferences(mongoTemplate.getCollectionName(RoomType.class), "images", "imageVariants", references);
+        addReferences(mongoTemplate.getCollectionName(Room.class), "imagesOverride", "imageVariantsOverride", references);
+        return references;
+    }
+
+    // Streams the collection with only the image fields projected
+    @SuppressWarnings("unchecked")
+    private void addReferences(String collection, String imagesField, String variantsField,
+                               Map<String, Set<String>> references) {
+        Document projection = new Document(imagesField, 1).append(variantsField, 1);
+        for (Document doc : mongoTemplate.getCollection(collection).find().projection(projection)) {
+            List<String> images = (List<String>) doc.get(imagesField);
+            if (images != null) {
+                for (String url : images) addReference(url, references);
+            }
+            List<Document> variants = (List<Document>) doc.get(variantsField);
+            if (variants != null) {
+                for (Document variant : variants) {
+                    addReference(variant.getString("original"), references);
+                    Document sizes = variant.get("sizes", Document.class);
+                    if (sizes != null) {
+                        for (Object url : sizes.values()) addReference((String) url, references);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addReference(String url, Map<String, Set<String>> references) {
+        if (url == null || references.containsKey(url)) return;
+        Set<String> keys = s3Service.candidateKeysFromUrl(url);
+        if (!keys.isEmpty()) references.put(url, keys);
+    }
+}
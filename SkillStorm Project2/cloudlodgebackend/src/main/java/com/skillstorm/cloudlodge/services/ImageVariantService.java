@@ -0,0 +1,242 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.skillstorm.cloudlodge.models.ImageVariants;
+import com.skillstorm.cloudlodge.models.ResolvedRoom;
+import com.skillstorm.cloudlodge.models.Room;
+import com.skillstorm.cloudlodge.models.RoomType;
+
+// Makes resized JPEG copies of uploaded room images on a small background pool and
+// $pushes them onto RoomType.imageVariants / Room.imageVariantsOverride once they are in S3.
+@Service
+public class ImageVariantService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageVariantService.class);
+
+    private final S3Service s3Service;
+    private final ImageCache imageCache;
+    private final MongoTemplate mongoTemplate;
+    private final RoomTypeService roomTypeService;
+    private final Executor imageExecutor;
+    private final Map<String, Integer> widths = new LinkedHashMap<>();
+
+    @Value("${app.images.jpegQuality:0.82}")
+    private float jpegQuality;
+
+    @Value("${app.images.serveFromCache:true}")
+    private boolean serveFromCache;
+
+    public ImageVariantService(S3Service s3Service,
+                               ImageCache imageCache,
+                               MongoTemplate mongoTemplate,
+                               RoomTypeService roomTypeService,
+                               @Qualifier("imageExecutor") Executor imageExecutor,
+                               @Value("${app.images.variantWidths:thumb:160,small:480,medium:1024}") String variantWidths) {
+        this.s3Service = s3Service;
+        this.imageCache = imageCache;
+        this.mongoTemplate = mongoTemplate;
+        this.roomTypeService = roomTypeService;
+        this.imageExecutor = imageExecutor;
+        for (String entry : variantWidths.split(",")) {
+            String[] parts = entry.trim().split(":");
+            widths.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+    }
+
+    public void generateForRoomType(String roomTypeId, List<String> imageUrls) {
+        submit(imageUrls, variants -> {
+            if (pushVariants(RoomType.class, roomTypeId, "images", "imageVariants", variants) > 0) {
+                roomTypeService.invalidateCache();
+            }
+        });
+    }
+
+    public void generateForRoom(String roomId, List<String> imageUrls) {
+        submit(imageUrls, variants -> pushVariants(Room.class, roomId, "imagesOverride", "imageVariantsOverride", variants));
+    }
+
+    // One conditional push per variant: only while its original is still in the image list (the image may have been
+    // removed or replaced while the variants were generated) and it has no variants yet. Skipped variant objects
+    // are left for the image garbage collector. Returns how many were stored.
+    private long pushVariants(Class<?> type, String id, String imagesField, String variantsField, List<ImageVariants> variants) {
+        long stored = 0;
+        for (ImageVariants variant : variants) {
+            Query query = Query.query(Criteria.where("id").is(id)
+                    .and(imagesField).is(variant.getOriginal())
+                    .and(variantsField + ".original").ne(variant.getOriginal()));
+            stored += mongoTemplate.updateFirst(query, new Update().push(variantsField, variant), type).getModifiedCount();
+        }
+        return stored;
+    }
+
+    // Variants whose original is still in the image list (drops the ones for deleted images)
+    public static List<ImageVariants> retain(List<ImageVariants> variants, List<String> images) {
+        if (variants == null || images == null) return null;
+        List<ImageVariants> kept = new ArrayList<>();
+        for (ImageVariants variant : variants) {
+            if (images.contains(variant.getOriginal())) kept.add(variant);
+        }
+        return kept.isEmpty() ? null : kept;
+    }
+
+    // Swap each image for its resized copy of the given size; images without one keep the original
+    public static void useSize(List<ResolvedRoom> rooms, String size) {
+        if (size == null || size.isBlank()) return;
+        for (ResolvedRoom room : rooms) {
+            if (room.getImages() == null || room.getImageVariants() == null) continue;
+            Map<String, String> sized = new LinkedHashMap<>();
+            for (ImageVariants variant : room.getImageVariants()) {
+                if (variant.getSizes() != null && variant.getSizes().get(size) != null) {
+                    sized.put(variant.getOriginal(), variant.getSizes().get(size));
+                }
+            }
+            List<String> images = new ArrayList<>(room.getImages().size());
+            for (String image : room.getImages()) {
+                images.add(sized.getOrDefault(image, image));
+            }
+            room.setImages(images);
+        }
+    }
+
+    // Point resolved rooms' images (and their resized copies) at this server's /images/<key> so browsers load them
+    // through the local disk cache instead of from S3. Runs on the request thread: the URLs are absolute, built
+    // from the current request, because the frontend is served from another origin. The stored documents keep
+    // their S3 URLs; the variants are copied because they can belong to a cached RoomType.
+    // Off with app.images.serveFromCache=false.
+    public void useImageCache(List<ResolvedRoom> rooms) {
+        if (!serveFromCache) return;
+        String baseUrl = ServletUriComponentsBuilder.fromCurrentContextPath().toUriString();
+        for (ResolvedRoom room : rooms) {
+            if (room.getImages() != null) {
+                room.setImages(room.getImages().stream().map(url -> s3Service.cachedUrl(url, baseUrl)).toList());
+            }
+            if (room.getImageVariants() != null) {
+                List<ImageVariants> variants = new ArrayList<>(room.getImageVariants().size());
+                for (ImageVariants variant : room.getImageVariants()) {
+                    Map<String, String> sizes = null;
+                    if (variant.getSizes() != null) {
+                        sizes = new LinkedHashMap<>();
+                        for (Map.Entry<String, String> size : variant.getSizes().entrySet()) {
+                            sizes.put(size.getKey(), s3Service.cachedUrl(size.getValue(), baseUrl));
+                        }
+                    }
+                    variants.add(new ImageVariants(s3Service.cachedUrl(variant.getOriginal(), baseUrl), sizes));
+                }
+                room.setImageVariants(variants);
+            }
+        }
+    }
+
+    private void submit(List<String> imageUrls, Consumer<List<ImageVariants>> store) {
+        if (imageUrls == null || imageUrls.isEmpty()) return;
+        List<String> urls = List.copyOf(imageUrls);
+        try {
+            imageExecutor.execute(() -> {
+                List<ImageVariants> variants = new ArrayList<>();
+                for (String url : urls) {
+                    try {
+                        ImageVariants variant = createVariants(url);
+                        if (variant != null) variants.add(variant);
+                    } catch (Exception e) {
+                        log.warn("Could not create image variants for {}", url, e);
+                    }
+                }
+                if (!variants.isEmpty()) store.accept(variants);
+            });
+        } catch (RejectedExecutionException e) {
+            // originals are still served; variants can be generated again later
+            log.warn("Image pool is full, skipping variants for {} images", urls.size());
+        }
+    }
+
+    private ImageVariants createVariants(String url) throws IOException {
+        String key = s3Service.keyFromUrl(url);
+        if (key == null) return null;
+
+        // goes through the disk cache, which also warms it for the originals about to be requested
+        ImageCache.Entry original = imageCache.get(key);
+        BufferedImage source;
+        try {
+            source = ImageIO.read(original.getFile().toFile());
+        } finally {
+            imageCache.unpin(original);
+        }
+        if (source == null) {
+            log.info("Skipping variants for {}: not a format ImageIO can read", url);
+            return null;
+        }
+
+        String baseName = key.substring(key.lastIndexOf('/') + 1).replaceFirst("\\.[^.]+$", "");
+        Map<String, String> sizes = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> size : widths.entrySet()) {
+            if (source.getWidth() <= size.getValue()) {
+                // already small enough, no point storing an upscaled copy
+                sizes.put(size.getKey(), url);
+                continue;
+            }
+            byte[] jpeg = toJpeg(resize(source, size.getValue()));
+            String variantKey = "images/variants/" + size.getKey() + "/" + baseName + ".jpg";
+            sizes.put(size.getKey(), s3Service.uploadBytes(jpeg, variantKey, "image/jpeg"));
+        }
+        return new ImageVariants(url, sizes);
+    }
+
+    private static BufferedImage resize(BufferedImage source, int width) {
+        int height = Math.max(1, Math.round(source.getHeight() * (width / (float) source.getWidth())));
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resized.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return resized;
+    }
+
+    private byte[] toJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,225 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.result.UpdateResult;
+import com.skillstorm.cloudlodge.models.IncomeBucket;
+import com.skillstorm.cloudlodge.models.Payment;
+import com.skillstorm.cloudlodge.utils.IncomeHistogram;
+
+@Service
+public class IncomeRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(IncomeRollupService.class);
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    public IncomeRollupService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // Existing deployments have payments but no buckets yet, so the dashboard would show no income until someone
+    // ran the rebuild. Also rebuilds when a flip was cut off between the payment and the buckets (see sync), or
+    // when buckets still carry the 'applied' array the previous version of sync kept on them.
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfNeeded() {
+        try {
+            String reason = null;
+            if (!mongoTemplate.exists(new Query(), IncomeBucket.class)) {
+                reason = "no income buckets yet";
+            } else if (mongoTemplate.exists(Query.query(Criteria.where("rollupPendingSince").ne(null)), Payment.class)) {
+                reason = "a payment was left half applied";
+            } else if (mongoTemplate.exists(Query.query(Criteria.where("applied").exists(true)), IncomeBucket.class)) {
+                reason = "buckets still carry the old 'applied' array";
+            }
+            if (reason != null) {
+                log.info("Rebuilding income rollups at startup: {}", reason);
+                rebuild();
+            }
+        } catch (Exception e) {
+            log.error("Income rollup backfill failed, run POST /dashboard/income/rebuild", e);
+        }
+    }
+
+    // Bring the hour and day buckets in line with the payment's current status: a SUCCEEDED payment is
+    // counted once, anything else not at all. The flip is claimed on the payment before the buckets are touched:
+    // the compare-and-set on rollupGeneration lets exactly one caller move the payment on, and only that caller
+    // sends the $inc, so each flip reaches the buckets at most once. rollupPendingSince stays set until both
+    // buckets are written; a payment still carrying it was interrupted in between and is fixed by rebuild().
+    public void sync(String paymentId) {
+        Payment payment = paymentId != null ? mongoTemplate.findById(paymentId, Payment.class) : null;
+        if (payment == null || payment.getAmount() == null) return;
+
+        boolean counted = Boolean.TRUE.equals(payment.getRollupCounted());
+        boolean shouldCount = payment.getStatus() == Payment.Status.SUCCEEDED;
+        if (counted == shouldCount) return;
+
+        int generation = payment.getRollupGeneration() != null ? payment.getRollupGeneration() : 0;
+        UpdateResult claimed = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("id").is(paymentId).and("rollupGeneration").is(payment.getRollupGeneration())),
+                new Update().set("rollupCounted", shouldCount).set("rollupGeneration", generation + 1)
+                        .set("rollupPendingSince", Instant.now()),
+                Payment.class);
+        // someone else flipped it first
+        if (claimed.getModifiedCount() == 0) return;
+
+        double amount = shouldCount ? payment.getAmount() : -payment.getAmount();
+        int count = shouldCount ? 1 : -1;
+        Instant at = payment.getCreatedAt() != null ? payment.getCreatedAt() : Instant.now();
+        Instant hourStart = hourStart(at);
+        LocalDate day = at.atZone(zone).toLocalDate();
+        List<Query> buckets = List.of(bucketQuery(hourKey(hourStart)), bucketQuery(dayKey(day)));
+        List<Update> increments = List.of(increment(IncomeBucket.Granularity.HOUR, hourStart, amount, count),
+                increment(IncomeBucket.Granularity.DAY, dayStart(day), amount, count));
+
+        // both buckets in one round trip
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, IncomeBucket.class);
+        for (int i = 0; i < buckets.size(); i++) {
+            bulk.upsert(buckets.get(i), increments.get(i));
+        }
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            // two payments creating the same bucket at once: the losing upsert did nothing and can simply be sent again
+            if (e.getErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) throw e;
+            for (BulkWriteError error : e.getErrors()) {
+                mongoTemplate.upsert(buckets.get(error.getIndex()), increments.get(error.getIndex()), IncomeBucket.class);
+            }
+        }
+
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("id").is(paymentId).and("rollupGeneration").is(generation + 1)),
+                new Update().unset("rollupPendingSince"),
+                Payment.class);
+    }
+
+    // Hour buckets in [from, to), oldest first
+    public List<IncomeBucket> findHourly(Instant from, Instant to) {
+        return findBuckets(IncomeBucket.Granularity.HOUR, from, to);
+    }
+
+    // Day buckets for the local dates in [from, to), oldest first
+    public List<IncomeBucket> findDaily(LocalDate from, LocalDate to) {
+        return findBuckets(IncomeBucket.Granularity.DAY, dayStart(from), dayStart(to));
+    }
+
+    // Income for the local dates [from, to) at any granularity.
+    // Hourly views read the hour buckets, everything coarser is binned from the day buckets.
+    public IncomeHistogram histogram(IncomeHistogram.Granularity granularity, LocalDate from, LocalDate to) {
+        IncomeHistogram histogram = IncomeHistogram.of(granularity, from, to, zone);
+        List<IncomeBucket> buckets = findBuckets(granularity == IncomeHistogram.Granularity.HOUR
+                        ? IncomeBucket.Granularity.HOUR : IncomeBucket.Granularity.DAY,
+                histogram.bucketStart(0), histogram.end());
+        for (IncomeBucket bucket : buckets) {
+            histogram.add(bucket.getBucketStart(), bucket.getTotal() != null ? bucket.getTotal() : 0.0);
+        }
+        return histogram;
+    }
+
+    // Backfill: drop every bucket and recompute them from the payments collection in one pass
+    public int rebuild() {
+        long started = System.currentTimeMillis();
+        Map<String, IncomeBucket> buckets = new HashMap<>();
+
+        Query succeeded = Query.query(Criteria.where("status").is(Payment.Status.SUCCEEDED));
+        try (Stream<Payment> payments = mongoTemplate.stream(succeeded, Payment.class)) {
+            payments.forEach(payment -> {
+                if (payment.getAmount() == null || payment.getCreatedAt() == null) return;
+                Instant hourStart = hourStart(payment.getCreatedAt());
+                LocalDate day = payment.getCreatedAt().atZone(zone).toLocalDate();
+                add(buckets, hourKey(hourStart), IncomeBucket.Granularity.HOUR, hourStart, payment.getAmount());
+                add(buckets, dayKey(day), IncomeBucket.Granularity.DAY, dayStart(day), payment.getAmount());
+            });
+        }
+
+        mongoTemplate.remove(new Query(), IncomeBucket.class);
+        if (!buckets.isEmpty()) {
+            mongoTemplate.insert(new ArrayList<>(buckets.values()), IncomeBucket.class);
+        }
+        // the buckets now hold exactly the SUCCEEDED payments with an amount and a date; mark the payments to match
+        Criteria countable = Criteria.where("status").is(Payment.Status.SUCCEEDED)
+                .and("amount").ne(null).and("createdAt").ne(null);
+        // and bump the generation so a sync that read the payment before the rebuild cannot apply its flip on top
+        mongoTemplate.updateMulti(Query.query(countable), new Update().set("rollupCounted", true)
+                .inc("rollupGeneration", 1).unset("rollupPendingSince"), Payment.class);
+        mongoTemplate.updateMulti(Query.query(new Criteria().norOperator(countable)), new Update().set("rollupCounted", false)
+                .inc("rollupGeneration", 1).unset("rollupPendingSince"), Payment.class);
+        log.info("Rebuilt {} income buckets in {} ms", buckets.size(), System.currentTimeMillis() - started);
+        return buckets.size();
+    }
+
+    private List<IncomeBucket> findBuckets(IncomeBucket.Granularity granularity, Instant from, Instant to) {
+        Query query = Query.query(Criteria.where("granularity").is(granularity)
+                .and("bucketStart").gte(from).lt(to))
+                .with(Sort.by("bucketStart"));
+        return mongoTemplate.find(query, IncomeBucket.class);
+    }
+
+    private static void add(Map<String, IncomeBucket> buckets, String key,
+                            IncomeBucket.Granularity granularity, Instant start, double amount) {
+        IncomeBucket bucket = buckets.computeIfAbsent(key, k -> {
+            IncomeBucket created = new IncomeBucket();
+            created.setId(k);
+            created.setGranularity(granularity);
+            created.setBucketStart(start);
+            created.setTotal(0.0);
+            created.setCount(0L);
+            return created;
+        });
+        bucket.setTotal(bucket.getTotal() + amount);
+        bucket.setCount(bucket.getCount() + 1);
+    }
+
+    private static Query bucketQuery(String bucketKey) {
+        return Query.query(Criteria.where("id").is(bucketKey));
+    }
+
+    private static Update increment(IncomeBucket.Granularity granularity, Instant start, double amount, int count) {
+        return new Update()
+                .inc("total", amount)
+                .inc("count", count)
+                .setOnInsert("granularity", granularity)
+                .setOnInsert("bucketStart", start);
+    }
+
+    // start of the local hour in the rollup zone; differs from the UTC hour in zones with a :30 or :45 offset
+    private Instant hourStart(Instant at) {
+        return at.atZone(zone).truncatedTo(ChronoUnit.HOURS).toInstant();
+    }
+
+    private Instant dayStart(LocalDate day) {
+        return day.atStartOfDay(zone).toInstant();
+    }
+
+    private static String hourKey(Instant hourStart) {
+        return IncomeBucket.Granularity.HOUR + ":" + hourStart;
+    }
+
+    private static String dayKey(LocalDate day) {
+        return IncomeBucket.Granularity.DAY + ":" + day;
+    }
+}
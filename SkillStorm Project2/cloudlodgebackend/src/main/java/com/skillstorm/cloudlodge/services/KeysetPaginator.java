@@ -0,0 +1,172 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+
+import com.skillstorm.cloudlodge.dtos.CursorPage;
+
+// Keyset (cursor) pagination: pages are ordered by (sort field, _id) and each page starts right after the
+// last row of the previous one, so a deep page is the same index seek as the first one.
+// The cursor is the last row's sort value and _id as extended JSON, base64url encoded; clients treat it as opaque.
+// Rows missing the sort field sort first ascending and last descending, the same as Mongo orders nulls.
+@Service
+public class KeysetPaginator {
+
+    private static final JsonWriterSettings CURSOR_JSON = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.pagination.defaultLimit:50}")
+    private int defaultLimit;
+
+    @Value("${app.pagination.maxLimit:200}")
+    private int maxLimit;
+
+    public KeysetPaginator(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // One page of 'type' matching the filter (may be null), sorted by sortField (must be one of allowedSorts)
+    public <T> CursorPage<T> page(Class<T> type, Criteria filter, String sortField, Set<String> allowedSorts,
+                                  boolean descending, String cursor, Integer limit) {
+        String field = fieldName(sortField, allowedSorts);
+        int size = limit(limit);
+
+        Query query = new Query();
+        Criteria after = cursor != null && !cursor.isBlank()
+                ? after(decode(cursor, field, descending, valueType(type, field)), field, descending) : null;
+        if (filter != null && after != null) {
+            query.addCriteria(new Criteria().andOperator(filter, after));
+        } else if (filter != null) {
+            query.addCriteria(filter);
+        } else if (after != null) {
+            query.addCriteria(after);
+        }
+        query.with(sort(field, descending)).limit(size + 1);
+
+        List<T> rows = new ArrayList<>(mongoTemplate.find(query, type));
+        String next = null;
+        if (rows.size() > size) {
+            rows = new ArrayList<>(rows.subList(0, size));
+            Document last = new Document();
+            mongoTemplate.getConverter().write(rows.get(size - 1), last);
+            next = encode(field, descending, "_id".equals(field) ? last.get("_id") : last.get(field), last.get("_id"));
+        }
+        return new CursorPage<>(rows, next);
+    }
+
+    // Java type of the sorted property, used to check cursor values; null when the model does not declare it
+    private Class<?> valueType(Class<?> type, String field) {
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getPersistentEntity(type);
+        if (entity == null) return null;
+        MongoPersistentProperty property = "_id".equals(field) ? entity.getIdProperty() : entity.getPersistentProperty(field);
+        return property != null ? property.getType() : null;
+    }
+
+    public int limit(Integer requested) {
+        if (requested == null || requested < 1) return defaultLimit;
+        return Math.min(requested, maxLimit);
+    }
+
+    // Mongo field name for a sort parameter; "id" means _id
+    public static String fieldName(String sortField, Set<String> allowedSorts) {
+        if (sortField == null || sortField.isBlank() || "id".equals(sortField) || "_id".equals(sortField)) return "_id";
+        if (!allowedSorts.contains(sortField)) {
+            throw new IllegalArgumentException("Cannot sort by " + sortField + ", use one of " + allowedSorts);
+        }
+        return sortField;
+    }
+
+    public static Sort sort(String field, boolean descending) {
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        return "_id".equals(field) ? Sort.by(direction, "_id") : Sort.by(direction, field).and(Sort.by(direction, "_id"));
+    }
+
+    // Rows strictly after the cursor position in (field, _id) order
+    public static Criteria after(Document position, String field, boolean descending) {
+        Object value = position.get("v");
+        Object id = position.get("id");
+        if ("_id".equals(field)) {
+            return descending ? Criteria.where("_id").lt(id) : Criteria.where("_id").gt(id);
+        }
+        if (descending) {
+            if (value == null) return Criteria.where(field).is(null).and("_id").lt(id);
+            return new Criteria().orOperator(
+                    Criteria.where(field).lt(value),
+                    Criteria.where(field).is(value).and("_id").lt(id),
+                    Criteria.where(field).is(null));
+        }
+        if (value == null) {
+            return new Criteria().orOperator(
+                    Criteria.where(field).is(null).and("_id").gt(id),
+                    Criteria.where(field).ne(null));
+        }
+        return new Criteria().orOperator(
+                Criteria.where(field).gt(value),
+                Criteria.where(field).is(value).and("_id").gt(id));
+    }
+
+    public static String encode(String field, boolean descending, Object value, Object id) {
+        Document position = new Document("s", field).append("d", descending).append("v", value).append("id", id);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(position.toJson(CURSOR_JSON).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Cursor back to its position; rejects tokens that are malformed or were issued for another sort.
+    // The value and _id must be plain scalars (a document such as {"$ne": ...} would turn into an operator in
+    // the query) and the value must fit valueType, the sorted property's Java type (null skips that check).
+    public static Document decode(String cursor, String field, boolean descending, Class<?> valueType) {
+        Document position;
+        try {
+            position = Document.parse(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (!field.equals(position.get("s")) || !Boolean.valueOf(descending).equals(position.get("d"))
+                || !position.containsKey("id")) {
+            throw new IllegalArgumentException("Cursor does not match the requested sort");
+        }
+        Object id = position.get("id");
+        Object value = position.get("v");
+        if (!(id instanceof ObjectId || id instanceof String) || !fits(value, "_id".equals(field) ? null : valueType)) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if ("_id".equals(field) && !(value == null || value instanceof ObjectId || value instanceof String)) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return position;
+    }
+
+    // Whether a decoded cursor value can stand for a property of the given Java type as Mongo stores it
+    private static boolean fits(Object value, Class<?> valueType) {
+        if (value == null) return true;
+        boolean scalar = value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Date || value instanceof ObjectId;
+        if (!scalar || valueType == null) return scalar;
+        Class<?> boxed = ClassUtils.resolvePrimitiveIfNecessary(valueType);
+        if (Number.class.isAssignableFrom(boxed)) return value instanceof Number;
+        if (String.class.equals(boxed) || boxed.isEnum()) return value instanceof String;
+        if (Boolean.class.equals(boxed)) return value instanceof Boolean;
+        if (Temporal.class.isAssignableFrom(boxed) || Date.class.isAssignableFrom(boxed)) return value instanceof Date;
+        return true;
+    }
+}
@@ -1,10 +1,20 @@
 package com.skillstorm.cloudlodge.services;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import com.skillstorm.cloudlodge.dtos.CursorPage;
 import com.skillstorm.cloudlodge.models.Payment;
 import com.skillstorm.cloudlodge.repositories.PaymentRepository;
 
@@ -12,9 +22,14 @@ import com.skillstorm.cloudlodge.repositories.PaymentRepository;
 public class PaymentService {
 
     private final PaymentRepository paymentRepository;
+    private final MongoTemplate mongoTemplate;
+    private final KeysetPaginator keysetPaginator;
 
-    public PaymentService(PaymentRepository paymentRepository) {
+    public PaymentService(PaymentRepository paymentRepository, MongoTemplate mongoTemplate,
+                          KeysetPaginator keysetPaginator) {
         this.paymentRepository = paymentRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.keysetPaginator = keysetPaginator;
     }
 
     // Get all payments
@@ -22,6 +37,16 @@ public class PaymentService {
         return paymentRepository.findAll();
     }
 
+    // Cursor over every payment for streaming responses (caller must close the stream)
+    public Stream<Payment> streamAll() {
+        return mongoTemplate.stream(new Query(), Payment.class);
+    }
+
+    // One cursor page of payments sorted by createdAt or id
+    public CursorPage<Payment> findPage(String sort, boolean descending, String cursor, Integer limit) {
+        return keysetPaginator.page(Payment.class, null, sort, Set.of("createdAt"), descending, cursor, limit);
+    }
+
     // Get payment by ID
     public Optional<Payment> findById(String id) {
         return paymentRepository.findById(id);
@@ -37,11 +62,43 @@ public class PaymentService {
         return Optional.ofNullable(paymentRepository.findByTransactionId(txnId));
     }
 
+    // Get payments created after a point in time
+    public List<Payment> findCreatedAfter(Instant createdAt) {
+        return paymentRepository.findByCreatedAtAfter(createdAt);
+    }
+
     // Create or update payment
     public Payment save(Payment payment) {
         return paymentRepository.save(payment);
     }
 
+    // Upsert the payment for a Stripe transaction in one round trip using $set on the given fields.
+    // Returns the payment as it was before (null if it is new); id and createdAt are filled in on 'changes'.
+    // Running it again with the same values changes nothing, so webhook retries are safe.
+    public Payment upsertByTransactionId(Payment changes) {
+        ObjectId newId = new ObjectId();
+        Instant now = Instant.now();
+
+        Update update = new Update()
+                .set("status", changes.getStatus())
+                .setOnInsert("_id", newId)
+                .setOnInsert("createdAt", now);
+        if (changes.getReservationId() != null) update.set("reservationId", changes.getReservationId());
+        if (changes.getAmount() != null) update.set("amount", changes.getAmount());
+        if (changes.getCurrency() != null) update.set("currency", changes.getCurrency());
+
+        Payment previous = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("transactionId").is(changes.getTransactionId())),
+                update,
+                FindAndModifyOptions.options().upsert(true).returnNew(false),
+                Payment.class);
+
+        changes.setId(previous != null ? previous.getId() : newId.toHexString());
+        changes.setCreatedAt(previous != null ? previous.getCreatedAt() : now);
+        if (changes.getAmount() == null && previous != null) changes.setAmount(previous.getAmount());
+        return previous;
+    }
+
     // Delete payment
     public void delete(String id) {
         paymentRepository.deleteById(id);
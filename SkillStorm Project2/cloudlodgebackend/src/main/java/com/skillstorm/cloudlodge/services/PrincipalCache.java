@@ -0,0 +1,92 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.skillstorm.cloudlodge.models.UserPrincipal;
+import com.skillstorm.cloudlodge.repositories.UserRepository;
+
+// Caches the principal snapshot per user id so authenticated requests skip the users lookup.
+// Entries expire after the TTL; anything that changes a user's email, role or Stripe customer calls invalidate().
+// Each miss takes a per-key load token that invalidate() drops, so a load that read the user before an
+// invalidate() returns what it read but does not put the stale principal back into the cache.
+@Service
+public class PrincipalCache {
+
+    private final UserRepository userRepository;
+    private final long ttlMs;
+    private final Map<String, Entry> entries;
+    // user id -> token of the latest load in flight; only holds ids being loaded right now
+    private final Map<String, Object> loads = new HashMap<>();
+
+    public PrincipalCache(UserRepository userRepository,
+                          @Value("${app.auth.principalCacheSize:10000}") int maxSize,
+                          @Value("${app.auth.principalCacheTtlMs:300000}") long ttlMs) {
+        this.userRepository = userRepository;
+        this.ttlMs = ttlMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    // Principal for the user id, loading it from Mongo on a miss; empty if the user no longer exists
+    public Optional<UserPrincipal> get(String userId) {
+        if (userId == null) return Optional.empty();
+
+        long now = System.currentTimeMillis();
+        Object token = new Object();
+        synchronized (entries) {
+            Entry entry = entries.get(userId);
+            if (entry != null && entry.expiresAt > now) {
+                return Optional.of(entry.principal);
+            }
+            loads.put(userId, token);
+        }
+
+        Optional<UserPrincipal> loaded;
+        try {
+            loaded = userRepository.findById(userId).map(UserPrincipal::from);
+        } catch (RuntimeException e) {
+            synchronized (entries) {
+                loads.remove(userId, token);
+            }
+            throw e;
+        }
+        synchronized (entries) {
+            // invalidated (or overtaken by a newer load) while reading: keep the cache as it is
+            if (!loads.remove(userId, token)) return loaded;
+            if (loaded.isPresent()) {
+                entries.put(userId, new Entry(loaded.get(), now + ttlMs));
+            } else {
+                entries.remove(userId);
+            }
+        }
+        return loaded;
+    }
+
+    public void invalidate(String userId) {
+        if (userId == null) return;
+        synchronized (entries) {
+            entries.remove(userId);
+            loads.remove(userId);
+        }
+    }
+
+    private static final class Entry {
+        private final UserPrincipal principal;
+        private final long expiresAt;
+
+        Entry(UserPrincipal principal, long expiresAt) {
+            this.principal = principal;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.skillstorm.cloudlodge.models.Reservation;
+
+//cancels PENDING_PAYMENT reservations whose hold has expired and releases their nights
+@Service
+public class ReservationHoldSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(ReservationHoldSweeper.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final RoomAvailabilityService roomAvailabilityService;
+    private final ReservationIntervalIndex reservationIntervalIndex;
+
+    @Value("${app.reservations.holdSweepBatchSize:500}")
+    private int batchSize;
+
+    public ReservationHoldSweeper(MongoTemplate mongoTemplate, RoomAvailabilityService roomAvailabilityService,
+                                  ReservationIntervalIndex reservationIntervalIndex) {
+        this.mongoTemplate = mongoTemplate;
+        this.roomAvailabilityService = roomAvailabilityService;
+        this.reservationIntervalIndex = reservationIntervalIndex;
+    }
+
+    @Scheduled(fixedDelayString = "${app.reservations.holdSweepIntervalMs:60000}")
+    public void expireStaleHolds() {
+        Instant now = Instant.now();
+        int expired = 0;
+        List<Reservation> batch;
+        do {
+            batch = findExpiredHolds(now);
+            if (batch.isEmpty()) break;
+            expired += expire(batch);
+        } while (batch.size() == batchSize);
+
+        if (expired > 0) {
+            log.info("Expired {} unpaid reservation holds", expired);
+        }
+    }
+
+    private List<Reservation> findExpiredHolds(Instant now) {
+        Query query = Query.query(Criteria.where("status").is(Reservation.Status.PENDING_PAYMENT)
+                .and("holdExpiresAt").lt(now))
+                .limit(batchSize);
+        query.fields().include("id", "roomUnitId", "checkInDate", "checkOutDate");
+        return mongoTemplate.find(query, Reservation.class);
+    }
+
+    private int expire(List<Reservation> batch) {
+        List<String> ids = new ArrayList<>();
+        for (Reservation reservation : batch) {
+            ids.add(reservation.getId());
+        }
+
+        // status is checked again so a payment that landed in between is not cancelled
+        UpdateResult result = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("id").in(ids).and("status").is(Reservation.Status.PENDING_PAYMENT)),
+                new Update().set("status", Reservation.Status.CANCELLED).unset("holdExpiresAt"),
+                Reservation.class);
+
+        List<Reservation> cancelled = batch;
+        if (result.getModifiedCount() < batch.size()) {
+            Query stillCancelled = Query.query(Criteria.where("id").in(ids)
+                    .and("status").is(Reservation.Status.CANCELLED));
+            stillCancelled.fields().include("id", "roomUnitId", "checkInDate", "checkOutDate");
+            cancelled = mongoTemplate.find(stillCancelled, Reservation.class);
+        }
+
+        roomAvailabilityService.releaseReservations(cancelled);
+        List<String> restored = restorePaidInBetween(cancelled);
+        for (Reservation reservation : cancelled) {
+            if (!restored.contains(reservation.getId())) {
+                reservationIntervalIndex.remove(reservation.getId());
+            }
+        }
+        return cancelled.size() - restored.size();
+    }
+
+    // A payment can confirm a cancelled hold (and rebook its nights) after the status update but before the
+    // delete above, which would leave it paid with no nights. The status is read again after the delete and those
+    // get their nights back; confirmPayment re-checks its nights after its own status change for the opposite order.
+    private List<String> restorePaidInBetween(List<Reservation> cancelled) {
+        List<String> ids = new ArrayList<>();
+        for (Reservation reservation : cancelled) {
+            ids.add(reservation.getId());
+        }
+        Query confirmed = Query.query(Criteria.where("id").in(ids).and("status").ne(Reservation.Status.CANCELLED));
+        confirmed.fields().include("id", "roomUnitId", "checkInDate", "checkOutDate");
+
+        List<String> restored = new ArrayList<>();
+        for (Reservation reservation : mongoTemplate.find(confirmed, Reservation.class)) {
+            restored.add(reservation.getId());
+            try {
+                roomAvailabilityService.ensureNights(reservation.getId(), reservation.getRoomUnitId(),
+                        reservation.getCheckInDate(), reservation.getCheckOutDate());
+            } catch (IllegalStateException e) {
+                log.error("Reservation {} was paid while its hold expired and its nights are now taken", reservation.getId());
+            }
+        }
+        return restored;
+    }
+}
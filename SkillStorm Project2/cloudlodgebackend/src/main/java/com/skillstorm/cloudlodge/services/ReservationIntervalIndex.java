@@ -0,0 +1,228 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.skillstorm.cloudlodge.models.Reservation;
+
+//in-memory per-room interval index of active (not CANCELLED) reservations that check out today or later;
+//past stays can no longer conflict with a booking, so they are not loaded and are dropped from a room's list
+//whenever it is rewritten. Ranges starting before today are left to Mongo (see covers).
+//each room keeps its stays sorted by check-in with a running max of check-out, so
+//"which reservations on room R overlap [A, B)" is a binary search plus a walk over the hits: O(log n + k)
+//like RoomAvailabilityIndex it is per instance, so app.availability.localIndex=false turns it off as well
+@Service
+public class ReservationIntervalIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ReservationIntervalIndex.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, RoomIntervals> rooms = new ConcurrentHashMap<>();
+    private final Map<String, String> roomOfReservation = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+    private Clock clock = Clock.systemDefaultZone();
+
+    @Value("${app.availability.localIndex:true}")
+    private boolean enabled;
+
+    public ReservationIntervalIndex(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // Build the index once the app is up; until then callers fall back to Mongo
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) return;
+        long started = System.currentTimeMillis();
+        Query query = Query.query(Criteria.where("status").ne(Reservation.Status.CANCELLED)
+                .and("roomUnitId").ne(null)
+                .and("checkOutDate").gte(LocalDate.now(clock)));
+        query.fields().include("id", "roomUnitId", "checkInDate", "checkOutDate", "status");
+
+        long count = 0;
+        try (Stream<Reservation> reservations = mongoTemplate.stream(query, Reservation.class)) {
+            for (Reservation reservation : (Iterable<Reservation>) reservations::iterator) {
+                put(reservation);
+                count++;
+            }
+            ready = true;
+            log.info("Loaded reservation interval index: {} reservations across {} rooms in {} ms",
+                    count, rooms.size(), System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            log.warn("Could not load reservation interval index, overlap checks will query Mongo directly", e);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Whether the index has every reservation that can overlap a range starting on 'start':
+    // it is loaded and the range does not reach back before today
+    public boolean covers(LocalDate start) {
+        return ready && start != null && !start.isBefore(LocalDate.now(clock));
+    }
+
+    // Add or move a reservation; cancelled, dateless or past reservations are removed instead
+    public void put(Reservation reservation) {
+        if (reservation == null || reservation.getId() == null) return;
+        remove(reservation.getId());
+        LocalDate today = LocalDate.now(clock);
+        if (reservation.getStatus() == Reservation.Status.CANCELLED
+                || reservation.getRoomUnitId() == null
+                || reservation.getCheckInDate() == null
+                || reservation.getCheckOutDate() == null
+                || !reservation.getCheckInDate().isBefore(reservation.getCheckOutDate())
+                || reservation.getCheckOutDate().isBefore(today)) {
+            return;
+        }
+        String roomUnitId = reservation.getRoomUnitId();
+        roomOfReservation.put(reservation.getId(), roomUnitId);
+        List<String> past = rooms.computeIfAbsent(roomUnitId, id -> new RoomIntervals())
+                .add(reservation.getId(), reservation.getCheckInDate().toEpochDay(), reservation.getCheckOutDate().toEpochDay(),
+                        today.toEpochDay());
+        for (String id : past) {
+            roomOfReservation.remove(id, roomUnitId);
+        }
+    }
+
+    public void remove(String reservationId) {
+        if (reservationId == null) return;
+        String roomUnitId = roomOfReservation.remove(reservationId);
+        if (roomUnitId == null) return;
+        RoomIntervals intervals = rooms.get(roomUnitId);
+        if (intervals != null) intervals.remove(reservationId);
+    }
+
+    // true if any active reservation on the room (other than excludeId) has a night in [start, end)
+    public boolean overlaps(String roomUnitId, LocalDate start, LocalDate end, String excludeId) {
+        return !conflicts(roomUnitId, start, end, excludeId).isEmpty();
+    }
+
+    // ids of active reservations on the room (other than excludeId) with a night in [start, end)
+    public List<String> conflicts(String roomUnitId, LocalDate start, LocalDate end, String excludeId) {
+        RoomIntervals intervals = rooms.get(roomUnitId);
+        if (intervals == null || start == null || end == null) return Collections.emptyList();
+        return intervals.overlapping(start.toEpochDay(), end.toEpochDay(), excludeId);
+    }
+
+    //sorted-array interval list for one room; writers replace the arrays, readers use a snapshot
+    private static final class RoomIntervals {
+        private volatile Snapshot snapshot = new Snapshot(new long[0], new long[0], new String[0]);
+
+        // Insert after any stays starting on the same day; the arrays are copied anyway, so stays that checked out
+        // before keepFrom are left out on the way. Returns the ids left out.
+        synchronized List<String> add(String id, long start, long end, long keepFrom) {
+            Snapshot current = snapshot;
+            int n = current.starts.length;
+            long[] starts = new long[n + 1];
+            long[] ends = new long[n + 1];
+            String[] ids = new String[n + 1];
+            List<String> past = new ArrayList<>();
+            int size = 0;
+            boolean placed = false;
+            for (int i = 0; i <= n; i++) {
+                if (!placed && (i == n || current.starts[i] > start)) {
+                    starts[size] = start;
+                    ends[size] = end;
+                    ids[size++] = id;
+                    placed = true;
+                }
+                if (i == n) break;
+                if (current.ends[i] < keepFrom) {
+                    past.add(current.ids[i]);
+                    continue;
+                }
+                starts[size] = current.starts[i];
+                ends[size] = current.ends[i];
+                ids[size++] = current.ids[i];
+            }
+            snapshot = size == n + 1
+                    ? new Snapshot(starts, ends, ids)
+                    : new Snapshot(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size), Arrays.copyOf(ids, size));
+            return past;
+        }
+
+        synchronized void remove(String id) {
+            Snapshot current = snapshot;
+            int n = current.ids.length;
+            int at = Arrays.asList(current.ids).indexOf(id);
+            if (at < 0) return;
+            long[] starts = new long[n - 1];
+            long[] ends = new long[n - 1];
+            String[] ids = new String[n - 1];
+            copyAround(current, starts, ends, ids, at, 1, n, 0);
+            snapshot = new Snapshot(starts, ends, ids);
+        }
+
+        List<String> overlapping(long from, long to, String excludeId) {
+            Snapshot current = snapshot;
+            List<String> hits = new ArrayList<>();
+            // everything at index < hi starts before 'to'; walk back while some earlier stay can still reach 'from'
+            for (int i = lowerBound(current.starts, current.starts.length, to) - 1;
+                    i >= 0 && current.maxEnds[i] > from; i--) {
+                if (current.ends[i] > from && !current.ids[i].equals(excludeId)) {
+                    hits.add(current.ids[i]);
+                }
+            }
+            return hits;
+        }
+
+        // copy source into the new arrays leaving out / opening up the slot at 'at'
+        private static void copyAround(Snapshot source, long[] starts, long[] ends, String[] ids,
+                                       int at, int skip, int n, int gap) {
+            System.arraycopy(source.starts, 0, starts, 0, at);
+            System.arraycopy(source.ends, 0, ends, 0, at);
+            System.arraycopy(source.ids, 0, ids, 0, at);
+            System.arraycopy(source.starts, at + skip, starts, at + gap, n - at - skip);
+            System.arraycopy(source.ends, at + skip, ends, at + gap, n - at - skip);
+            System.arraycopy(source.ids, at + skip, ids, at + gap, n - at - skip);
+        }
+
+        // first index whose start is >= value
+        private static int lowerBound(long[] starts, int n, long value) {
+            int lo = 0, hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (starts[mid] < value) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private static final class Snapshot {
+        private final long[] starts;
+        private final long[] ends;
+        private final String[] ids;
+        private final long[] maxEnds;   // maxEnds[i] = largest end among 0..i
+
+        Snapshot(long[] starts, long[] ends, String[] ids) {
+            this.starts = starts;
+            this.ends = ends;
+            this.ids = ids;
+            this.maxEnds = new long[ends.length];
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < ends.length; i++) {
+                max = Math.max(max, ends[i]);
+                maxEnds[i] = max;
+            }
+        }
+    }
+}
@@ -1,23 +1,57 @@
 package com.skillstorm.cloudlodge.services;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import com.skillstorm.cloudlodge.dtos.CursorPage;
 import com.skillstorm.cloudlodge.models.Reservation;
 import com.skillstorm.cloudlodge.repositories.ReservationRepository;
 
 @Service
 public class ReservationService {
 
+    private static final Logger log = LoggerFactory.getLogger(ReservationService.class);
+
     private final ReservationRepository reservationRepository;
     private final RoomAvailabilityService roomAvailabilityService;
+    private final RoomAvailabilityIndex roomAvailabilityIndex;
+    private final ReservationIntervalIndex reservationIntervalIndex;
+    private final MongoTemplate mongoTemplate;
+    private final KeysetPaginator keysetPaginator;
+
+    // how long a PENDING_PAYMENT reservation keeps its nights before the hold sweeper releases them
+    @Value("${app.reservations.holdMinutes:30}")
+    private long holdMinutes;
     
-    public ReservationService(ReservationRepository reservationRepository, RoomAvailabilityService roomAvailabilityService) {
+    public ReservationService(ReservationRepository reservationRepository,
+                              RoomAvailabilityService roomAvailabilityService,
+                              RoomAvailabilityIndex roomAvailabilityIndex,
+                              ReservationIntervalIndex reservationIntervalIndex,
+                              MongoTemplate mongoTemplate,
+                              KeysetPaginator keysetPaginator) {
         this.reservationRepository = reservationRepository;
         this.roomAvailabilityService = roomAvailabilityService;
+        this.roomAvailabilityIndex = roomAvailabilityIndex;
+        this.reservationIntervalIndex = reservationIntervalIndex;
+        this.mongoTemplate = mongoTemplate;
+        this.keysetPaginator = keysetPaginator;
     }
 
     // Get all reservations
@@ -25,6 +59,17 @@ public class ReservationService {
         return reservationRepository.findAll();
     }
 
+    // Cursor over every reservation for streaming responses (caller must close the stream)
+    public Stream<Reservation> streamAll() {
+        return mongoTemplate.stream(new Query(), Reservation.class);
+    }
+
+    // One cursor page of reservations sorted by checkInDate, createdAt or id
+    public CursorPage<Reservation> findPage(String sort, boolean descending, String cursor, Integer limit) {
+        return keysetPaginator.page(Reservation.class, null, sort, Set.of("checkInDate", "createdAt"),
+                descending, cursor, limit);
+    }
+
     // Get reservation by ID
     public Optional<Reservation> findById(String id) {
         return reservationRepository.findById(id);
@@ -40,6 +85,30 @@ public class ReservationService {
         return reservationRepository.findByRoomUnitId(roomUnitId);
     }
 
+    // Reservations staff have to sort out by hand (see confirmPayment)
+    public List<Reservation> findNeedingAttention() {
+        return reservationRepository.findByNeedsAttentionTrue();
+    }
+
+    // Active reservations on the room (other than excludeId) with a night in [start, end).
+    // Answered from the in-memory interval index; before it is loaded, or for a range starting in the past
+    // (the index only keeps current and future stays), one indexed query on the room.
+    public List<String> findConflicts(String roomUnitId, LocalDate start, LocalDate end, String excludeId) {
+        if (reservationIntervalIndex.covers(start)) {
+            return reservationIntervalIndex.conflicts(roomUnitId, start, end, excludeId);
+        }
+        List<String> ids = new ArrayList<>();
+        for (Reservation reservation : reservationRepository.findOverlappingReservationsForRoom(roomUnitId, start, end)) {
+            if (!reservation.getId().equals(excludeId)) ids.add(reservation.getId());
+        }
+        return ids;
+    }
+
+    public List<Reservation> findConflictingReservations(String roomUnitId, LocalDate start, LocalDate end) {
+        List<String> ids = findConflicts(roomUnitId, start, end, null);
+        return ids.isEmpty() ? List.of() : reservationRepository.findAllById(ids);
+    }
+
     // Search by check-in range (YYYY-MM-DD)
     // Convert LocalDate to UTC Date range to match MongoDB DateTime values stored in the DB.
     public List<Reservation> findByCheckInRange(String start, String end) {
@@ -58,9 +127,166 @@ public class ReservationService {
         return reservationRepository.findByCheckInDateBetweenDates(startDate, endDate);
     }
 
-    // Create or update reservation
+    // Create a reservation and book its nights.
+    // Nights are inserted first under the reservation's (pre-assigned) id so a double booking
+    // fails before the reservation exists; if the reservation insert fails the nights are removed.
+    public Reservation createReservation(Reservation reservation) {
+        LocalDate start = reservation.getCheckInDate();
+        LocalDate end = reservation.getCheckOutDate();
+        boolean hasNights = reservation.getRoomUnitId() != null && start != null && end != null && start.isBefore(end);
+
+        // cheap in-memory check before touching Mongo; the availability storage is the real guard
+        if (hasNights && hasConflict(reservation.getRoomUnitId(), start, end, null)) {
+            throw new IllegalStateException("Room is already booked for the selected dates");
+        }
+
+        reservation.setId(new ObjectId().toHexString());
+        // id is assigned up front, so auditing would treat this as an update and skip @CreatedDate
+        reservation.setCreatedAt(Instant.now());
+
+        if (hasNights) {
+            roomAvailabilityService.reserveNights(reservation.getId(), reservation.getRoomUnitId(), start, end);
+        }
+
+        try {
+            Reservation created = reservationRepository.insert(reservation);
+            reservationIntervalIndex.put(created);
+            return created;
+        } catch (RuntimeException e) {
+            if (hasNights) {
+                roomAvailabilityService.deleteByReservationId(reservation.getId());
+            }
+            throw e;
+        }
+    }
+
+    // Move a reservation to PENDING_PAYMENT with a time-boxed hold on its nights
+    public Reservation startPaymentHold(Reservation reservation) {
+        reservation.setStatus(Reservation.Status.PENDING_PAYMENT);
+        reservation.setHoldExpiresAt(Instant.now().plus(Duration.ofMinutes(holdMinutes)));
+        Reservation saved = reservationRepository.save(reservation);
+        reservationIntervalIndex.put(saved);
+        return saved;
+    }
+
+    // Re-book the nights of a reservation whose hold expired; false if they were taken since
+    public boolean rebookNights(Reservation reservation) {
+        LocalDate start = reservation.getCheckInDate();
+        LocalDate end = reservation.getCheckOutDate();
+        if (reservation.getRoomUnitId() == null || start == null || end == null || !start.isBefore(end)) {
+            return true;
+        }
+        try {
+            // idempotent: nights the sweeper has not released yet are kept instead of colliding
+            roomAvailabilityService.ensureNights(reservation.getId(), reservation.getRoomUnitId(), start, end);
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    // Mark a reservation paid with a single $set and return it, or empty if it does not exist.
+    // A hold that expired in the meantime gets its nights back first; if they were taken since it stays CANCELLED.
+    public Optional<Reservation> confirmPayment(String reservationId, String paymentId) {
+        if (reservationId == null) return Optional.empty();
+
+        Update confirm = new Update()
+                .set("status", Reservation.Status.CONFIRMED)
+                .set("paymentId", paymentId)
+                .unset("holdExpiresAt");
+        Reservation confirmed = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("id").is(reservationId).and("status").ne(Reservation.Status.CANCELLED)),
+                confirm, FindAndModifyOptions.options().returnNew(true), Reservation.class);
+        if (confirmed != null) {
+            reservationIntervalIndex.put(confirmed);
+            return Optional.of(confirmed);
+        }
+
+        // missing or cancelled, the rare path
+        Optional<Reservation> cancelled = reservationRepository.findById(reservationId);
+        if (cancelled.isEmpty()) return cancelled;
+        if (!rebookNights(cancelled.get())) {
+            // paid for nights someone else has now: it stays CANCELLED, and staff refund or rebook the guest
+            log.error("Reservation {} was paid after its hold expired and its nights were taken", reservationId);
+            flagForAttention(reservationId, paymentId, "Paid after the hold expired, but the nights were booked by someone else");
+            return reservationRepository.findById(reservationId);
+        }
+        Reservation rebooked = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("id").is(reservationId).and("status").is(Reservation.Status.CANCELLED)),
+                confirm, FindAndModifyOptions.options().returnNew(true), Reservation.class);
+        // The sweeper may have deleted the nights between the rebook above and the status change; it re-reads the
+        // status after its delete and this re-checks the nights after the status change, so one of the two puts them back.
+        if (rebooked != null && !rebookNights(rebooked)) {
+            // someone else booked a night in that window; the payment stands, so a person has to move the guest
+            log.error("Reservation {} was paid but its nights were taken after the hold expired", reservationId);
+            rebooked = flagForAttention(reservationId, paymentId, "Confirmed and paid, but its nights were booked by someone else; move the guest");
+        }
+        reservationIntervalIndex.put(rebooked);
+        return Optional.ofNullable(rebooked).or(() -> reservationRepository.findById(reservationId));
+    }
+
+    // Put the reservation on the dashboard's needsAttention list; updating the reservation clears it
+    private Reservation flagForAttention(String reservationId, String paymentId, String reason) {
+        return mongoTemplate.findAndModify(Query.query(Criteria.where("id").is(reservationId)),
+                new Update().set("needsAttention", true).set("attentionReason", reason).set("paymentId", paymentId),
+                FindAndModifyOptions.options().returnNew(true), Reservation.class);
+    }
+
+    // A failed payment only matters while the reservation is still waiting for one: it stays PENDING_PAYMENT and,
+    // if it has no hold deadline, gets one so the hold sweeper releases its nights when nobody pays.
+    // Paid (CONFIRMED/COMPLETED/MODIFIED) and expired (CANCELLED) reservations are left alone, so a late or
+    // retried payment_failed event cannot undo a payment.
+    public void markPaymentFailed(String reservationId) {
+        if (reservationId == null) return;
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("id").is(reservationId)
+                        .and("status").is(Reservation.Status.PENDING_PAYMENT)
+                        .and("holdExpiresAt").is(null)),
+                new Update().set("holdExpiresAt", Instant.now().plus(Duration.ofMinutes(holdMinutes))),
+                Reservation.class);
+    }
+
+    // Update a reservation and move its booked nights along with it.
+    // Only the nights that differ between the old and new room/dates are written (see RoomAvailabilityService.moveNights);
+    // if saving the reservation then fails the nights are moved back.
+    public Reservation updateReservation(String id, Reservation changes) {
+        Reservation existing = reservationRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Reservation not found with id " + id));
+        changes.setId(id);
+        // the id is set, so auditing treats this as an update and would not fill createdAt
+        if (changes.getCreatedAt() == null) changes.setCreatedAt(existing.getCreatedAt());
+
+        boolean hadNights = holdsNights(existing);
+        boolean hasNights = holdsNights(changes);
+        String oldRoom = hadNights ? existing.getRoomUnitId() : null;
+        String newRoom = hasNights ? changes.getRoomUnitId() : null;
+
+        if (hasNights && hasConflict(newRoom, changes.getCheckInDate(), changes.getCheckOutDate(), id)) {
+            throw new IllegalStateException("Room is already booked for the selected dates");
+        }
+
+        roomAvailabilityService.moveNights(id,
+                oldRoom, existing.getCheckInDate(), existing.getCheckOutDate(),
+                newRoom, changes.getCheckInDate(), changes.getCheckOutDate());
+
+        Reservation saved;
+        try {
+            saved = reservationRepository.save(changes);
+        } catch (RuntimeException e) {
+            roomAvailabilityService.moveNights(id,
+                    newRoom, changes.getCheckInDate(), changes.getCheckOutDate(),
+                    oldRoom, existing.getCheckInDate(), existing.getCheckOutDate());
+            throw e;
+        }
+        reservationIntervalIndex.put(saved);
+        return saved;
+    }
+
+    // Create or update reservation (no availability changes, see updateReservation)
     public Reservation save(Reservation reservation) {
-        return reservationRepository.save(reservation);
+        Reservation saved = reservationRepository.save(reservation);
+        reservationIntervalIndex.put(saved);
+        return saved;
     }
 
     // Delete reservation
@@ -68,5 +294,23 @@ public class ReservationService {
         // Delete all RoomAvailability entries for this reservation
         roomAvailabilityService.deleteByReservationId(id);
         reservationRepository.deleteById(id);
+        reservationIntervalIndex.remove(id);
+    }
+
+    // Reservation index first (ranges from today on), the per-night availability index otherwise
+    // (that one cannot tell a reservation's own nights apart, so it is only used for new bookings)
+    private boolean hasConflict(String roomUnitId, LocalDate start, LocalDate end, String excludeId) {
+        if (reservationIntervalIndex.covers(start)) {
+            return reservationIntervalIndex.overlaps(roomUnitId, start, end, excludeId);
+        }
+        return excludeId == null && roomAvailabilityIndex.isReady() && roomAvailabilityIndex.isBooked(roomUnitId, start, end);
+    }
+
+    private static boolean holdsNights(Reservation reservation) {
+        return reservation.getStatus() != Reservation.Status.CANCELLED
+                && reservation.getRoomUnitId() != null
+                && reservation.getCheckInDate() != null
+                && reservation.getCheckOutDate() != null
+                && reservation.getCheckInDate().isBefore(reservation.getCheckOutDate());
     }
 }
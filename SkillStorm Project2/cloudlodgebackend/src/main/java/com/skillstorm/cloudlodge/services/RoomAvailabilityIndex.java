@@ -0,0 +1,181 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.skillstorm.cloudlodge.models.RoomAvailability;
+import com.skillstorm.cloudlodge.models.RoomStay;
+import com.skillstorm.cloudlodge.repositories.RoomAvailabilityRepository;
+import com.skillstorm.cloudlodge.repositories.RoomStayRepository;
+
+//in-memory copy of roomAvailability: one day-bitset per room unit
+//lets "is room X free from A to B" be answered without a Mongo round trip
+//the copy is per instance and only sees bookings made through this instance after the load, so it is only
+//correct with a single app instance; when several instances take bookings set app.availability.localIndex=false
+//and search / conflict checks go to Mongo (the unique indexes there are what actually prevent double booking)
+@Service
+public class RoomAvailabilityIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomAvailabilityIndex.class);
+
+    private final RoomAvailabilityRepository roomAvailabilityRepository;
+    private final RoomStayRepository roomStayRepository;
+    private final Map<String, DayBitmap> bitmaps = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    @Value("${app.availability.storageMode:nightly}")
+    private String storageMode;
+
+    @Value("${app.availability.localIndex:true}")
+    private boolean enabled;
+
+    public RoomAvailabilityIndex(RoomAvailabilityRepository roomAvailabilityRepository,
+                                 RoomStayRepository roomStayRepository) {
+        this.roomAvailabilityRepository = roomAvailabilityRepository;
+        this.roomStayRepository = roomStayRepository;
+    }
+
+    // Build the index once the app is up; until then callers fall back to Mongo
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            log.info("Availability index disabled (app.availability.localIndex=false), searches query Mongo");
+            return;
+        }
+        long started = System.currentTimeMillis();
+        long count = 0;
+        try {
+            if ("interval".equalsIgnoreCase(storageMode)) {
+                try (Stream<RoomStay> stays = roomStayRepository.streamAllBy()) {
+                    for (RoomStay stay : (Iterable<RoomStay>) stays::iterator) {
+                        markRange(stay.getRoomUnitId(), stay.getCheckIn(), stay.getCheckOut());
+                        count += stay.getCheckOut().toEpochDay() - stay.getCheckIn().toEpochDay();
+                    }
+                }
+            }
+            // nightly rows; in interval mode these are nights not migrated yet, booked until the migration converts them
+            try (Stream<RoomAvailability> rows = roomAvailabilityRepository.streamAllBy()) {
+                for (RoomAvailability row : (Iterable<RoomAvailability>) rows::iterator) {
+                    markBooked(row);
+                    count++;
+                }
+            }
+            ready = true;
+            log.info("Loaded availability index: {} booked nights across {} rooms in {} ms",
+                    count, bitmaps.size(), System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            log.warn("Could not load availability index, searches will query Mongo directly", e);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // true if the room has any booked night in [start, end)
+    public boolean isBooked(String roomUnitId, LocalDate start, LocalDate end) {
+        DayBitmap bitmap = bitmaps.get(roomUnitId);
+        return bitmap != null && bitmap.anySet(start.toEpochDay(), end.toEpochDay());
+    }
+
+    // ids of every room with at least one booked night in [start, end)
+    public Set<String> findBookedRoomIds(LocalDate start, LocalDate end) {
+        long from = start.toEpochDay();
+        long to = end.toEpochDay();
+        Set<String> booked = new HashSet<>();
+        bitmaps.forEach((roomUnitId, bitmap) -> {
+            if (bitmap.anySet(from, to)) {
+                booked.add(roomUnitId);
+            }
+        });
+        return booked;
+    }
+
+    public void markBooked(RoomAvailability availability) {
+        if (availability.getRoomUnitId() == null || availability.getDate() == null) return;
+        bitmaps.computeIfAbsent(availability.getRoomUnitId(), id -> new DayBitmap())
+                .set(availability.getDate().toEpochDay(), true);
+    }
+
+    // set every night in [start, end) for a room
+    public void markRange(String roomUnitId, LocalDate start, LocalDate end) {
+        if (roomUnitId == null || start == null || end == null) return;
+        DayBitmap bitmap = bitmaps.computeIfAbsent(roomUnitId, id -> new DayBitmap());
+        for (long day = start.toEpochDay(); day < end.toEpochDay(); day++) {
+            bitmap.set(day, true);
+        }
+    }
+
+    public void release(RoomAvailability availability) {
+        if (availability.getRoomUnitId() == null || availability.getDate() == null) return;
+        DayBitmap bitmap = bitmaps.get(availability.getRoomUnitId());
+        if (bitmap != null) {
+            bitmap.set(availability.getDate().toEpochDay(), false);
+        }
+    }
+
+    // clear every night in [start, end) for a room
+    public void releaseRange(String roomUnitId, LocalDate start, LocalDate end) {
+        if (roomUnitId == null || start == null || end == null) return;
+        DayBitmap bitmap = bitmaps.get(roomUnitId);
+        if (bitmap == null) return;
+        for (long day = start.toEpochDay(); day < end.toEpochDay(); day++) {
+            bitmap.set(day, false);
+        }
+    }
+
+    public void releaseAll(Iterable<RoomAvailability> availabilities) {
+        for (RoomAvailability availability : availabilities) {
+            release(availability);
+        }
+    }
+
+    //bit i is the night (origin + i) as an epoch day; origin moves back if an earlier night is booked
+    private static final class DayBitmap {
+        private long origin;
+        private BitSet days = new BitSet();
+        private boolean empty = true;
+
+        synchronized void set(long epochDay, boolean booked) {
+            if (empty) {
+                if (!booked) return;
+                origin = epochDay;
+                empty = false;
+            }
+            if (epochDay < origin) {
+                if (!booked) return;
+                rebase(epochDay);
+            }
+            days.set((int) (epochDay - origin), booked);
+        }
+
+        synchronized boolean anySet(long fromDay, long toDay) {
+            if (empty || toDay <= origin || toDay <= fromDay) return false;
+            int from = (int) (Math.max(fromDay, origin) - origin);
+            int next = days.nextSetBit(from);
+            return next >= 0 && origin + next < toDay;
+        }
+
+        private void rebase(long newOrigin) {
+            int shift = (int) (origin - newOrigin);
+            BitSet shifted = new BitSet(days.length() + shift);
+            for (int i = days.nextSetBit(0); i >= 0; i = days.nextSetBit(i + 1)) {
+                shifted.set(i + shift);
+            }
+            days = shifted;
+            origin = newOrigin;
+        }
+    }
+}
@@ -1,35 +1,133 @@
 package com.skillstorm.cloudlodge.services;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import com.skillstorm.cloudlodge.dtos.CursorPage;
+import com.skillstorm.cloudlodge.models.Reservation;
 import com.skillstorm.cloudlodge.models.RoomAvailability;
+import com.skillstorm.cloudlodge.models.RoomStay;
 import com.skillstorm.cloudlodge.repositories.RoomAvailabilityRepository;
+import com.skillstorm.cloudlodge.repositories.RoomStayRepository;
 
+// Booked nights are stored one of two ways (app.availability.storageMode):
+//  - nightly (default): one roomAvailability document per room per night
+//  - interval: one roomStays document per reservation and room covering [checkIn, checkOut)
+// Reads return RoomAvailability rows either way; in interval mode they are expanded from the stays
+// (clipped to the requested range) and carry the stay id.
+// Switching to interval mode: restart with storageMode=interval, then run the migration with deleteNightly
+// (AvailabilityMigrationService). Until it has run, nightly rows that were not migrated yet still count as
+// booked in interval mode (booking checks and booked-room lookups read both collections), and a reservation's
+// leftover rows are dropped as soon as it gets a stay or is released, so nothing can be double booked meanwhile.
 @Service
 public class RoomAvailabilityService {
 
+    private static final int DUPLICATE_KEY = 11000;
+
     private final RoomAvailabilityRepository roomAvailabilityRepository;
+    private final RoomStayRepository roomStayRepository;
+    private final RoomAvailabilityIndex roomAvailabilityIndex;
+    private final MongoTemplate mongoTemplate;
+    private final KeysetPaginator keysetPaginator;
+
+    @Value("${app.availability.storageMode:nightly}")
+    private String storageMode;
 
-    public RoomAvailabilityService(RoomAvailabilityRepository roomAvailabilityRepository) {
+    public RoomAvailabilityService(RoomAvailabilityRepository roomAvailabilityRepository,
+                                   RoomStayRepository roomStayRepository,
+                                   RoomAvailabilityIndex roomAvailabilityIndex,
+                                   MongoTemplate mongoTemplate,
+                                   KeysetPaginator keysetPaginator) {
         this.roomAvailabilityRepository = roomAvailabilityRepository;
+        this.roomStayRepository = roomStayRepository;
+        this.roomAvailabilityIndex = roomAvailabilityIndex;
+        this.mongoTemplate = mongoTemplate;
+        this.keysetPaginator = keysetPaginator;
+    }
+
+    public boolean isIntervalMode() {
+        return "interval".equalsIgnoreCase(storageMode);
     }
 
     public List<RoomAvailability> findAll() {
+        if (isIntervalMode()) return expand(roomStayRepository.findAll(), null, null);
         return roomAvailabilityRepository.findAll();
     }
 
+    // Cursor over every booked night for streaming responses (caller must close the stream).
+    // In interval mode each stay is expanded to its nights as it is read.
+    public Stream<RoomAvailability> streamAll() {
+        if (isIntervalMode()) {
+            return mongoTemplate.stream(new Query(), RoomStay.class)
+                    .flatMap(stay -> expand(List.of(stay), null, null).stream());
+        }
+        return mongoTemplate.stream(new Query(), RoomAvailability.class);
+    }
+
+    // One cursor page sorted by date or id. In interval mode the page is of stays (sorted by checkIn),
+    // each expanded to its nights, so a page can hold more than 'limit' rows.
+    public CursorPage<RoomAvailability> findPage(String sort, boolean descending, String cursor, Integer limit) {
+        if (isIntervalMode()) {
+            String field = "date".equals(sort) ? "checkIn" : sort;
+            CursorPage<RoomStay> stays = keysetPaginator.page(RoomStay.class, null, field, Set.of("checkIn"),
+                    descending, cursor, limit);
+            return new CursorPage<>(expand(stays.getItems(), null, null), stays.getNext());
+        }
+        return keysetPaginator.page(RoomAvailability.class, null, sort, Set.of("date"), descending, cursor, limit);
+    }
+
     public List<RoomAvailability> findByRoomUnitId(String roomUnitId) {
+        if (isIntervalMode()) return expand(roomStayRepository.findByRoomUnitId(roomUnitId), null, null);
         return roomAvailabilityRepository.findByRoomUnitId(roomUnitId);
     }
 
     public List<RoomAvailability> findByDate(LocalDate date) {
+        if (isIntervalMode()) {
+            LocalDate next = date.plusDays(1);
+            return expand(roomStayRepository.findOverlapping(date, next), date, next);
+        }
         return roomAvailabilityRepository.findByDate(date);
     }
 
+    // Ids of rooms occupied on the given night: one distinct query on the date / checkIn index
+    public Set<String> findOccupiedRoomIds(LocalDate date) {
+        return findBookedRoomIds(date, date.plusDays(1));
+    }
+
+    // Ids of rooms with at least one booked night in [start, end)
+    public Set<String> findBookedRoomIds(LocalDate start, LocalDate end) {
+        Set<String> booked = new HashSet<>();
+        if (isIntervalMode()) {
+            booked.addAll(mongoTemplate.findDistinct(
+                    Query.query(overlaps(start, end)), "roomUnitId", RoomStay.class, String.class));
+            // plus nights not migrated yet (nothing once the migration has run)
+        }
+        booked.addAll(mongoTemplate.findDistinct(
+                Query.query(Criteria.where("date").gte(start).lt(end)),
+                "roomUnitId",
+                RoomAvailability.class,
+                String.class));
+        return booked;
+    }
+
     public List<RoomAvailability> findByReservationId(String reservationId) {
+        if (isIntervalMode()) return expand(roomStayRepository.findByReservationId(reservationId), null, null);
         return roomAvailabilityRepository.findByReservationId(reservationId);
     }
 
@@ -37,18 +135,312 @@ public class RoomAvailabilityService {
             LocalDate start,
             LocalDate end
     ) {
+        if (isIntervalMode()) return expand(roomStayRepository.findOverlapping(start, end), start, end);
         return roomAvailabilityRepository.findBookedInRange(start, end);
     }
 
+    // Book every night in [start, end) for a reservation.
+    // Nightly mode: one unordered insertMany; the unique (roomUnitId, date) index rejects nights that
+    // are already taken, whatever did get inserted is removed again and an IllegalStateException is thrown.
+    // Interval mode: see reserveStay.
+    public List<RoomAvailability> reserveNights(String reservationId, String roomUnitId, LocalDate start, LocalDate end) {
+        if (isIntervalMode()) {
+            return expand(List.of(reserveStay(reservationId, roomUnitId, start, end)), null, null);
+        }
+
+        List<RoomAvailability> nights = new ArrayList<>();
+        for (LocalDate date = start; date.isBefore(end); date = date.plusDays(1)) {
+            RoomAvailability availability = new RoomAvailability();
+            availability.setRoomUnitId(roomUnitId);
+            availability.setDate(date);
+            availability.setReservationId(reservationId);
+            nights.add(availability);
+        }
+        if (nights.isEmpty()) {
+            return nights;
+        }
+
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RoomAvailability.class)
+                    .insert(nights)
+                    .execute();
+        } catch (RuntimeException e) {
+            // roll back the nights that made it in before reporting the failure
+            mongoTemplate.remove(Query.query(Criteria.where("reservationId").is(reservationId)), RoomAvailability.class);
+            if (isDuplicateKey(e)) {
+                throw new IllegalStateException("Room is already booked for the selected dates");
+            }
+            throw e;
+        }
+
+        for (RoomAvailability night : nights) {
+            roomAvailabilityIndex.markBooked(night);
+        }
+        return nights;
+    }
+
+    // Insert the stay first, then look for any other stay on the room overlapping it and back out if there is one.
+    // Of two racing bookings at least the later one sees the other, so both can fail but both never succeed;
+    // the unique (roomUnitId, checkIn) index catches two stays starting on the same night outright.
+    private RoomStay reserveStay(String reservationId, String roomUnitId, LocalDate start, LocalDate end) {
+        RoomStay stay = new RoomStay(roomUnitId, start, end, reservationId);
+        try {
+            stay = mongoTemplate.insert(stay);
+        } catch (DuplicateKeyException e) {
+            throw new IllegalStateException("Room is already booked for the selected dates");
+        }
+
+        boolean conflict = mongoTemplate.exists(
+                Query.query(Criteria.where("roomUnitId").is(roomUnitId)
+                        .and("checkIn").lt(end)
+                        .and("checkOut").gt(start)
+                        .and("id").ne(stay.getId())),
+                RoomStay.class)
+                || heldByUnmigratedNights(roomUnitId, start, end, reservationId);
+        if (conflict) {
+            mongoTemplate.remove(Query.query(Criteria.where("id").is(stay.getId())), RoomStay.class);
+            throw new IllegalStateException("Room is already booked for the selected dates");
+        }
+
+        dropUnmigratedNights(reservationId);
+        if (reservationId != null) {
+            // a stay the migration wrote from this reservation's old rows while it was being moved here
+            List<RoomStay> leftovers = mongoTemplate.findAllAndRemove(Query.query(Criteria.where("reservationId").is(reservationId)
+                    .and("id").ne(stay.getId())), RoomStay.class);
+            for (RoomStay leftover : leftovers) {
+                roomAvailabilityIndex.releaseRange(leftover.getRoomUnitId(), leftover.getCheckIn(), leftover.getCheckOut());
+            }
+        }
+        roomAvailabilityIndex.markRange(roomUnitId, start, end);
+        return stay;
+    }
+
+    // Move a reservation's nights from the old room/range to the new one (null room = no nights),
+    // touching only the nights that differ. Nightly mode sends the added nights and the removed ones as
+    // one ordered bulk write: added nights go first, so if one of them is taken nothing is removed, the
+    // added ones that got in are deleted again and an IllegalStateException is thrown.
+    // Returns the number of availability documents written.
+    public int moveNights(String reservationId,
+                          String oldRoomUnitId, LocalDate oldStart, LocalDate oldEnd,
+                          String newRoomUnitId, LocalDate newStart, LocalDate newEnd) {
+        if (isIntervalMode()) {
+            return moveStay(reservationId, oldRoomUnitId, oldStart, oldEnd, newRoomUnitId, newStart, newEnd);
+        }
+
+        Set<LocalDate> removed = nightsOf(oldRoomUnitId, oldStart, oldEnd);
+        Set<LocalDate> added = nightsOf(newRoomUnitId, newStart, newEnd);
+        if (oldRoomUnitId != null && oldRoomUnitId.equals(newRoomUnitId)) {
+            Set<LocalDate> kept = new HashSet<>(removed);
+            kept.retainAll(added);
+            removed.removeAll(kept);
+            added.removeAll(kept);
+        }
+        if (removed.isEmpty() && added.isEmpty()) return 0;
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, RoomAvailability.class);
+        for (LocalDate date : added) {
+            // upsert on (room, date, reservation): a night this reservation already holds is left alone,
+            // a night held by another reservation fails on the unique (roomUnitId, date) index
+            bulk.upsert(Query.query(Criteria.where("roomUnitId").is(newRoomUnitId)
+                            .and("date").is(date)
+                            .and("reservationId").is(reservationId)),
+                    new Update().setOnInsert("reservationId", reservationId));
+        }
+        if (!removed.isEmpty()) {
+            bulk.remove(Query.query(Criteria.where("reservationId").is(reservationId)
+                    .and("roomUnitId").is(oldRoomUnitId)
+                    .and("date").in(removed)));
+        }
+
+        try {
+            bulk.execute();
+        } catch (RuntimeException e) {
+            if (!added.isEmpty()) {
+                mongoTemplate.remove(Query.query(Criteria.where("reservationId").is(reservationId)
+                        .and("roomUnitId").is(newRoomUnitId)
+                        .and("date").in(added)), RoomAvailability.class);
+            }
+            if (isDuplicateKey(e)) {
+                throw new IllegalStateException("Room is already booked for the selected dates");
+            }
+            throw e;
+        }
+
+        for (LocalDate date : removed) {
+            roomAvailabilityIndex.releaseRange(oldRoomUnitId, date, date.plusDays(1));
+        }
+        for (LocalDate date : added) {
+            roomAvailabilityIndex.markRange(newRoomUnitId, date, date.plusDays(1));
+        }
+        return removed.size() + added.size();
+    }
+
+    // Make sure the reservation holds every night in [start, end); nights it already holds are left as they are.
+    // Safe to repeat, so callers racing a release of the same reservation can simply run it again afterwards.
+    public void ensureNights(String reservationId, String roomUnitId, LocalDate start, LocalDate end) {
+        moveNights(reservationId, null, null, null, roomUnitId, start, end);
+    }
+
+    // Interval mode: the reservation's single stay is rewritten in place and re-checked for overlaps
+    private int moveStay(String reservationId,
+                         String oldRoomUnitId, LocalDate oldStart, LocalDate oldEnd,
+                         String newRoomUnitId, LocalDate newStart, LocalDate newEnd) {
+        boolean hadNights = !nightsOf(oldRoomUnitId, oldStart, oldEnd).isEmpty();
+        boolean hasNights = !nightsOf(newRoomUnitId, newStart, newEnd).isEmpty();
+        if (!hasNights) {
+            if (!hadNights) return 0;
+            deleteByReservationId(reservationId);
+            return 1;
+        }
+
+        RoomStay stay = mongoTemplate.findOne(Query.query(Criteria.where("reservationId").is(reservationId)), RoomStay.class);
+        if (stay == null) {
+            reserveStay(reservationId, newRoomUnitId, newStart, newEnd);
+            return 1;
+        }
+        if (newRoomUnitId.equals(stay.getRoomUnitId()) && newStart.equals(stay.getCheckIn()) && newEnd.equals(stay.getCheckOut())) {
+            return 0;
+        }
+
+        Query byId = Query.query(Criteria.where("id").is(stay.getId()));
+        try {
+            mongoTemplate.updateFirst(byId, new Update()
+                    .set("roomUnitId", newRoomUnitId).set("checkIn", newStart).set("checkOut", newEnd), RoomStay.class);
+        } catch (DuplicateKeyException e) {
+            throw new IllegalStateException("Room is already booked for the selected dates");
+        }
+
+        boolean conflict = mongoTemplate.exists(
+                Query.query(Criteria.where("roomUnitId").is(newRoomUnitId)
+                        .and("checkIn").lt(newEnd)
+                        .and("checkOut").gt(newStart)
+                        .and("id").ne(stay.getId())),
+                RoomStay.class)
+                || heldByUnmigratedNights(newRoomUnitId, newStart, newEnd, reservationId);
+        if (conflict) {
+            mongoTemplate.updateFirst(byId, new Update()
+                    .set("roomUnitId", stay.getRoomUnitId()).set("checkIn", stay.getCheckIn()).set("checkOut", stay.getCheckOut()),
+                    RoomStay.class);
+            throw new IllegalStateException("Room is already booked for the selected dates");
+        }
+
+        dropUnmigratedNights(reservationId);
+        roomAvailabilityIndex.releaseRange(stay.getRoomUnitId(), stay.getCheckIn(), stay.getCheckOut());
+        roomAvailabilityIndex.markRange(newRoomUnitId, newStart, newEnd);
+        return 1;
+    }
+
+    // Interval mode stores a single night as a one-night stay
     public RoomAvailability save(RoomAvailability availability) {
-        return roomAvailabilityRepository.save(availability);
+        if (isIntervalMode()) {
+            RoomStay stay = new RoomStay(availability.getRoomUnitId(), availability.getDate(),
+                    availability.getDate().plusDays(1), availability.getReservationId());
+            stay.setId(availability.getId());
+            stay = roomStayRepository.save(stay);
+            roomAvailabilityIndex.markRange(stay.getRoomUnitId(), stay.getCheckIn(), stay.getCheckOut());
+            return expand(List.of(stay), null, null).get(0);
+        }
+        RoomAvailability saved = roomAvailabilityRepository.save(availability);
+        roomAvailabilityIndex.markBooked(saved);
+        return saved;
     }
 
+    // Interval mode ids are stay ids, so this removes the whole stay
     public void delete(String id) {
-        roomAvailabilityRepository.deleteById(id);
+        if (isIntervalMode()) {
+            roomStayRepository.findById(id).ifPresent(existing -> {
+                roomStayRepository.deleteById(id);
+                roomAvailabilityIndex.releaseRange(existing.getRoomUnitId(), existing.getCheckIn(), existing.getCheckOut());
+            });
+            return;
+        }
+        roomAvailabilityRepository.findById(id).ifPresent(existing -> {
+            roomAvailabilityRepository.deleteById(id);
+            roomAvailabilityIndex.release(existing);
+        });
     }
 
     public void deleteByReservationId(String reservationId) {
-        roomAvailabilityRepository.deleteByReservationId(reservationId);
+        if (isIntervalMode()) {
+            for (RoomStay stay : roomStayRepository.deleteByReservationId(reservationId)) {
+                roomAvailabilityIndex.releaseRange(stay.getRoomUnitId(), stay.getCheckIn(), stay.getCheckOut());
+            }
+            roomAvailabilityIndex.releaseAll(roomAvailabilityRepository.deleteByReservationId(reservationId));
+            return;
+        }
+        roomAvailabilityIndex.releaseAll(roomAvailabilityRepository.deleteByReservationId(reservationId));
+    }
+
+    // Release the nights of many reservations with a single deleteMany
+    public long releaseReservations(Collection<Reservation> reservations) {
+        if (reservations.isEmpty()) return 0;
+        List<String> reservationIds = new ArrayList<>();
+        for (Reservation reservation : reservations) {
+            reservationIds.add(reservation.getId());
+        }
+        long removed = mongoTemplate.remove(
+                Query.query(Criteria.where("reservationId").in(reservationIds)),
+                isIntervalMode() ? RoomStay.class : RoomAvailability.class).getDeletedCount();
+        if (isIntervalMode()) {
+            // nights not migrated yet
+            removed += mongoTemplate.remove(
+                    Query.query(Criteria.where("reservationId").in(reservationIds)), RoomAvailability.class).getDeletedCount();
+        }
+        for (Reservation reservation : reservations) {
+            roomAvailabilityIndex.releaseRange(
+                    reservation.getRoomUnitId(), reservation.getCheckInDate(), reservation.getCheckOutDate());
+        }
+        return removed;
+    }
+
+    // Interval mode: a night in [start, end) still stored as a roomAvailability row (not migrated yet)
+    // for another reservation. Nothing matches once the migration has removed the nightly rows.
+    private boolean heldByUnmigratedNights(String roomUnitId, LocalDate start, LocalDate end, String reservationId) {
+        Criteria nights = Criteria.where("roomUnitId").is(roomUnitId).and("date").gte(start).lt(end);
+        if (reservationId != null) nights = nights.and("reservationId").ne(reservationId);
+        return mongoTemplate.exists(Query.query(nights), RoomAvailability.class);
+    }
+
+    // Interval mode: the reservation's stay is now the only record of its nights
+    private void dropUnmigratedNights(String reservationId) {
+        if (reservationId == null) return;
+        mongoTemplate.remove(Query.query(Criteria.where("reservationId").is(reservationId)), RoomAvailability.class);
+    }
+
+    private static Set<LocalDate> nightsOf(String roomUnitId, LocalDate start, LocalDate end) {
+        Set<LocalDate> nights = new LinkedHashSet<>();
+        if (roomUnitId == null || start == null || end == null) return nights;
+        for (LocalDate date = start; date.isBefore(end); date = date.plusDays(1)) {
+            nights.add(date);
+        }
+        return nights;
+    }
+
+    private static Criteria overlaps(LocalDate start, LocalDate end) {
+        return Criteria.where("checkIn").lt(end).and("checkOut").gt(start);
+    }
+
+    // One row per night of each stay, limited to [from, to) when given
+    private static List<RoomAvailability> expand(List<RoomStay> stays, LocalDate from, LocalDate to) {
+        List<RoomAvailability> nights = new ArrayList<>();
+        for (RoomStay stay : stays) {
+            LocalDate start = from != null && from.isAfter(stay.getCheckIn()) ? from : stay.getCheckIn();
+            LocalDate end = to != null && to.isBefore(stay.getCheckOut()) ? to : stay.getCheckOut();
+            for (LocalDate date = start; date.isBefore(end); date = date.plusDays(1)) {
+                RoomAvailability night = new RoomAvailability();
+                night.setId(stay.getId());
+                night.setRoomUnitId(stay.getRoomUnitId());
+                night.setDate(date);
+                night.setReservationId(stay.getReservationId());
+                nights.add(night);
+            }
+        }
+        return nights;
+    }
+
+    private static boolean isDuplicateKey(RuntimeException e) {
+        if (e instanceof DuplicateKeyException) return true;
+        return e instanceof BulkOperationException bulk
+                && bulk.getErrors().stream().anyMatch(error -> error.getCode() == DUPLICATE_KEY);
     }
 }
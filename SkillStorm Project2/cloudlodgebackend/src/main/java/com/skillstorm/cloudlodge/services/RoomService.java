@@ -3,18 +3,27 @@ package com.skillstorm.cloudlodge.services;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 
+import com.skillstorm.cloudlodge.dtos.CursorPage;
+import com.skillstorm.cloudlodge.models.ImageVariants;
 import com.skillstorm.cloudlodge.models.ResolvedRoom;
 import com.skillstorm.cloudlodge.models.Room;
-import com.skillstorm.cloudlodge.models.RoomAvailability;
 import com.skillstorm.cloudlodge.models.RoomType;
 import com.skillstorm.cloudlodge.repositories.ReservationRepository;
 import com.skillstorm.cloudlodge.repositories.RoomRepository;
@@ -25,18 +34,35 @@ public class RoomService {
     private final RoomRepository roomRepository;
     private final RoomTypeService roomTypeService;
     private final RoomAvailabilityService roomAvailabilityService;
+    private final RoomAvailabilityIndex roomAvailabilityIndex;
     private final ReservationRepository reservationRepository;
+    private final MongoTemplate mongoTemplate;
+    private final KeysetPaginator keysetPaginator;
+
+    // "aggregation" runs search as a Mongo pipeline, "memory" filters and pages in Java
+    @Value("${app.rooms.searchMode:aggregation}")
+    private String searchMode;
+
+    // fields a search page may be sorted by (resolved values, after overrides)
+    private static final Set<String> SORTABLE_FIELDS =
+        Set.of("roomNumber", "price", "maxGuests", "roomCategory", "isActive");
 
     public RoomService(
         RoomRepository roomRepository,
         RoomTypeService roomTypeService,
         RoomAvailabilityService roomAvailabilityService,
-        ReservationRepository reservationRepository
+        RoomAvailabilityIndex roomAvailabilityIndex,
+        ReservationRepository reservationRepository,
+        MongoTemplate mongoTemplate,
+        KeysetPaginator keysetPaginator
     ) {
         this.roomRepository = roomRepository;
         this.roomTypeService = roomTypeService;
         this.roomAvailabilityService = roomAvailabilityService;
+        this.roomAvailabilityIndex = roomAvailabilityIndex;
         this.reservationRepository = reservationRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.keysetPaginator = keysetPaginator;
     }
 
     /* =========================
@@ -65,6 +91,14 @@ public class RoomService {
         }
         if (images.isEmpty()) images = null;
 
+        List<ImageVariants> imageVariants = new ArrayList<>();
+        if (roomType != null && roomType.getImageVariants() != null) {
+            imageVariants.addAll(roomType.getImageVariants());
+        }
+        if (room.getImageVariantsOverride() != null) {
+            imageVariants.addAll(room.getImageVariantsOverride());
+        }
+
         Integer maxGuests = room.getMaxGuestsOverride() != null
             ? room.getMaxGuestsOverride()
             : roomType != null ? roomType.getMaxGuests() : null;
@@ -72,7 +106,7 @@ public class RoomService {
         String roomCategory =
             roomType != null ? roomType.getRoomCategory() : null;
 
-        return new ResolvedRoom(
+        ResolvedRoom resolved = new ResolvedRoom(
             room.getId(),
             room.getRoomNumber(),
             room.getIsActive(),
@@ -85,31 +119,39 @@ public class RoomService {
             roomCategory,
             false // availability injected later
         );
+        resolved.setImageVariants(imageVariants.isEmpty() ? null : imageVariants);
+        return resolved;
     }
 
     /* =========================
-       FIND ALL (TODAY ONLY)
+       BATCH MERGE (ONE ROOM TYPE LOOKUP PER PAGE)
        ========================= */
-    public List<ResolvedRoom> findAllResolved() {
-        List<Room> rooms = roomRepository.findAll();
-        List<ResolvedRoom> resolved = new ArrayList<>();
-
-        LocalDate today = LocalDate.now();
+    public List<ResolvedRoom> mergeRoomsWithTypes(List<Room> rooms) {
+        Set<String> roomTypeIds = new HashSet<>();
+        for (Room room : rooms) {
+            if (room.getRoomTypeId() != null) {
+                roomTypeIds.add(room.getRoomTypeId());
+            }
+        }
+        Map<String, RoomType> roomTypes = roomTypeService.getRoomTypesByIds(roomTypeIds);
 
+        List<ResolvedRoom> resolved = new ArrayList<>(rooms.size());
         for (Room room : rooms) {
-            RoomType roomType = room.getRoomTypeId() != null
-                ? roomTypeService.getRoomTypeById(room.getRoomTypeId()).orElse(null)
-                : null;
+            resolved.add(mergeRoomWithType(room, roomTypes.get(room.getRoomTypeId())));
+        }
+        return resolved;
+    }
 
-            ResolvedRoom rr = mergeRoomWithType(room, roomType);
+    /* =========================
+       FIND ALL (TODAY ONLY)
+       ========================= */
+    public List<ResolvedRoom> findAllResolved() {
+        List<ResolvedRoom> resolved = mergeRoomsWithTypes(roomRepository.findAll());
 
-            boolean bookedToday = roomAvailabilityService
-                .findByRoomUnitId(room.getId())
-                .stream()
-                .anyMatch(a -> today.equals(a.getDate()));
+        Set<String> occupiedToday = roomAvailabilityService.findOccupiedRoomIds(LocalDate.now());
 
-            rr.setBooked(bookedToday);
-            resolved.add(rr);
+        for (ResolvedRoom rr : resolved) {
+            rr.setBooked(occupiedToday.contains(rr.getId()));
         }
 
         return resolved;
@@ -133,6 +175,11 @@ public class RoomService {
         Boolean includeBooked,
         Pageable pageable
     ) {
+        if ("aggregation".equalsIgnoreCase(searchMode)) {
+            return searchResolvedRoomsAggregated(
+                roomNumber, isActive, roomCategory, startDate, endDate, guests, includeBooked, pageable);
+        }
+
         List<Room> rooms;
 
         if (roomNumber != null && isActive != null) {
@@ -154,29 +201,19 @@ public class RoomService {
         LocalDate start = startDate != null ? LocalDate.parse(startDate) : null;
         LocalDate end   = endDate   != null ? LocalDate.parse(endDate)   : null;
 
-        Set<String> bookedRoomIds = new HashSet<>();
-        if (start != null && end != null) {
-            List<RoomAvailability> booked =
-                roomAvailabilityService.findBookedInRange(start, end);
-
-            for (RoomAvailability ra : booked) {
-                bookedRoomIds.add(ra.getRoomUnitId());
-            }
-        }
-
-        List<ResolvedRoom> filtered = new ArrayList<>();
+        Set<String> bookedRoomIds = findBookedRoomIds(start, end);
 
+        List<Room> candidates = new ArrayList<>();
         for (Room room : rooms) {
-
             boolean isBookedInRange = bookedRoomIds.contains(room.getId());
             if ((includeBooked == null || !includeBooked) && isBookedInRange) continue;
+            candidates.add(room);
+        }
 
-            RoomType roomType = room.getRoomTypeId() != null
-                ? roomTypeService.getRoomTypeById(room.getRoomTypeId()).orElse(null)
-                : null;
+        List<ResolvedRoom> filtered = new ArrayList<>();
 
-            ResolvedRoom rr = mergeRoomWithType(room, roomType);
-            rr.setBooked(isBookedInRange);
+        for (ResolvedRoom rr : mergeRoomsWithTypes(candidates)) {
+            rr.setBooked(bookedRoomIds.contains(rr.getId()));
 
             if (roomCategory != null &&
                 (rr.getRoomCategory() == null ||
@@ -201,6 +238,254 @@ public class RoomService {
         return new PageImpl<>(page, pageable, filtered.size());
     }
 
+    /* =========================
+       SEARCH (AGGREGATION PIPELINE)
+       ========================= */
+    // Same filters as the in-memory search, but the type lookup, override resolution,
+    // filtering and paging all happen in Mongo; only the requested page comes back.
+    public Page<ResolvedRoom> searchResolvedRoomsAggregated(
+        Integer roomNumber,
+        Boolean isActive,
+        String roomCategory,
+        String startDate,
+        String endDate,
+        Integer guests,
+        Boolean includeBooked,
+        Pageable pageable
+    ) {
+        List<Document> pipeline = searchPipeline(
+            roomNumber, isActive, roomCategory, startDate, endDate, guests, includeBooked, null, null);
+
+        pipeline.add(new Document("$sort", toSortDocument(pageable.getSort())));
+
+        List<Document> pageStages = new ArrayList<>();
+        pageStages.add(new Document("$skip", pageable.isPaged() ? pageable.getOffset() : 0L));
+        if (pageable.isPaged()) {
+            pageStages.add(new Document("$limit", pageable.getPageSize()));
+        }
+        pipeline.add(new Document("$facet", new Document("results", pageStages)
+            .append("total", List.of(new Document("$count", "count")))));
+
+        Document facet = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Room.class))
+            .aggregate(pipeline)
+            .first();
+
+        List<ResolvedRoom> page = new ArrayList<>();
+        long total = 0;
+        if (facet != null) {
+            for (Document doc : facet.getList("results", Document.class)) {
+                page.add(toResolvedRoom(doc));
+            }
+            List<Document> totals = facet.getList("total", Document.class);
+            if (!totals.isEmpty()) {
+                total = ((Number) totals.get(0).get("count")).longValue();
+            }
+        }
+
+        return new PageImpl<>(page, pageable, total);
+    }
+
+    /* =========================
+       SEARCH (KEYSET / CURSOR)
+       ========================= */
+    // Same filters as the aggregated search, paged by (roomNumber, _id) from an opaque cursor instead of
+    // skip/count, so a deep page reads no more rooms than the first one.
+    public CursorPage<ResolvedRoom> searchResolvedRoomsKeyset(
+        Integer roomNumber,
+        Boolean isActive,
+        String roomCategory,
+        String startDate,
+        String endDate,
+        Integer guests,
+        Boolean includeBooked,
+        boolean descending,
+        String cursor,
+        Integer limit
+    ) {
+        int size = keysetPaginator.limit(limit);
+        Criteria after = cursor != null && !cursor.isBlank()
+            ? KeysetPaginator.after(KeysetPaginator.decode(cursor, "roomNumber", descending, Integer.class), "roomNumber", descending)
+            : null;
+        int direction = descending ? -1 : 1;
+        Document sort = new Document("roomNumber", direction).append("_id", direction);
+
+        List<Document> pipeline = searchPipeline(
+            roomNumber, isActive, roomCategory, startDate, endDate, guests, includeBooked, after, sort);
+        pipeline.add(new Document("$limit", size + 1));
+
+        List<ResolvedRoom> rooms = new ArrayList<>();
+        for (Document doc : mongoTemplate.getCollection(mongoTemplate.getCollectionName(Room.class)).aggregate(pipeline)) {
+            rooms.add(toResolvedRoom(doc));
+        }
+
+        String next = null;
+        if (rooms.size() > size) {
+            rooms = new ArrayList<>(rooms.subList(0, size));
+            ResolvedRoom last = rooms.get(size - 1);
+            Object lastId = ObjectId.isValid(last.getId()) ? new ObjectId(last.getId()) : last.getId();
+            next = KeysetPaginator.encode("roomNumber", descending, last.getRoomNumber(), lastId);
+        }
+        return new CursorPage<>(rooms, next);
+    }
+
+    // Everything up to (not including) sort and paging: booked/keyset match, type lookup,
+    // override resolution and the filters on resolved fields
+    private List<Document> searchPipeline(
+        Integer roomNumber,
+        Boolean isActive,
+        String roomCategory,
+        String startDate,
+        String endDate,
+        Integer guests,
+        Boolean includeBooked,
+        Criteria keyset,
+        Document keysetSort
+    ) {
+        LocalDate start = startDate != null ? LocalDate.parse(startDate) : null;
+        LocalDate end   = endDate   != null ? LocalDate.parse(endDate)   : null;
+
+        List<Object> bookedIds = new ArrayList<>();
+        for (String id : findBookedRoomIds(start, end)) {
+            bookedIds.add(ObjectId.isValid(id) ? new ObjectId(id) : id);
+        }
+
+        List<Document> pipeline = new ArrayList<>();
+
+        Document match = new Document();
+        if (roomNumber != null) match.append("roomNumber", roomNumber);
+        if (isActive != null) match.append("isActive", isActive);
+        if ((includeBooked == null || !includeBooked) && !bookedIds.isEmpty()) {
+            match.append("_id", new Document("$nin", bookedIds));
+        }
+        if (keyset != null) {
+            match.append("$and", List.of(keyset.getCriteriaObject()));
+        }
+        if (!match.isEmpty()) {
+            pipeline.add(new Document("$match", match));
+        }
+        // sorting on the stored fields before the lookup lets Mongo walk an index and stop at the $limit
+        if (keysetSort != null) {
+            pipeline.add(new Document("$sort", keysetSort));
+        }
+
+        // roomTypeId is stored as a string, roomTypes._id as an ObjectId
+        pipeline.add(new Document("$addFields", new Document("roomTypeObjectId",
+            new Document("$convert", new Document("input", "$roomTypeId")
+                .append("to", "objectId")
+                .append("onError", null)
+                .append("onNull", null)))));
+        pipeline.add(new Document("$lookup", new Document("from", mongoTemplate.getCollectionName(RoomType.class))
+            .append("localField", "roomTypeObjectId")
+            .append("foreignField", "_id")
+            .append("as", "roomType")));
+        pipeline.add(new Document("$unwind", new Document("path", "$roomType")
+            .append("preserveNullAndEmptyArrays", true)));
+
+        // resolve overrides the same way mergeRoomWithType does
+        pipeline.add(new Document("$addFields", new Document()
+            .append("price", ifNull("$priceOverride", "$roomType.pricePerNight"))
+            .append("amenities", ifNull("$amenitiesOverride", "$roomType.amenities"))
+            .append("description", ifNull("$descriptionOverride", "$roomType.description"))
+            .append("maxGuests", ifNull("$maxGuestsOverride", "$roomType.maxGuests"))
+            .append("roomCategory", "$roomType.roomCategory")
+            .append("images", new Document("$concatArrays", List.of(
+                ifNull("$roomType.images", List.of()),
+                ifNull("$imagesOverride", List.of()))))
+            .append("imageVariants", new Document("$concatArrays", List.of(
+                ifNull("$roomType.imageVariants", List.of()),
+                ifNull("$imageVariantsOverride", List.of()))))
+            .append("booked", new Document("$in", List.of("$_id", bookedIds)))));
+
+        Document filters = new Document();
+        if (roomCategory != null) {
+            filters.append("roomCategory", new Document("$regex", "^" + escapeRegex(roomCategory) + "$")
+                .append("$options", "i"));
+        }
+        if (guests != null) {
+            filters.append("maxGuests", new Document("$gte", guests));
+        }
+        if (!filters.isEmpty()) {
+            pipeline.add(new Document("$match", filters));
+        }
+
+        return pipeline;
+    }
+
+    // Room ids with at least one booked night in [start, end); empty when no range given
+    private Set<String> findBookedRoomIds(LocalDate start, LocalDate end) {
+        Set<String> bookedRoomIds = new HashSet<>();
+        if (start != null && end != null) {
+            if (roomAvailabilityIndex.isReady()) {
+                // bitmask check per room, no Mongo round trip
+                bookedRoomIds = roomAvailabilityIndex.findBookedRoomIds(start, end);
+            } else {
+                // distinct room ids straight from Mongo, works for either availability storage mode
+                bookedRoomIds = roomAvailabilityService.findBookedRoomIds(start, end);
+            }
+        }
+        return bookedRoomIds;
+    }
+
+    private static Document ifNull(String field, Object fallback) {
+        return new Document("$ifNull", List.of(field, fallback));
+    }
+
+    private static Document toSortDocument(Sort sort) {
+        Document sortDoc = new Document();
+        for (Sort.Order order : sort) {
+            if (SORTABLE_FIELDS.contains(order.getProperty())) {
+                sortDoc.append(order.getProperty(), order.isAscending() ? 1 : -1);
+            }
+        }
+        if (!sortDoc.containsKey("roomNumber")) {
+            sortDoc.append("roomNumber", 1);
+        }
+        // _id keeps the order stable between pages
+        sortDoc.append("_id", 1);
+        return sortDoc;
+    }
+
+    private static String escapeRegex(String value) {
+        return value.replaceAll("[\\\\^$.|?*+()\\[\\]{}]", "\\\\$0");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ResolvedRoom toResolvedRoom(Document doc) {
+        List<String> images = (List<String>) doc.get("images");
+        Number price = (Number) doc.get("price");
+        Number roomNumber = (Number) doc.get("roomNumber");
+        Number maxGuests = (Number) doc.get("maxGuests");
+
+        ResolvedRoom resolved = new ResolvedRoom(
+            doc.get("_id").toString(),
+            roomNumber != null ? roomNumber.intValue() : null,
+            doc.getBoolean("isActive"),
+            price != null ? price.doubleValue() : null,
+            (List<String>) doc.get("amenities"),
+            doc.getString("description"),
+            images == null || images.isEmpty() ? null : images,
+            maxGuests != null ? maxGuests.intValue() : null,
+            doc.getString("roomTypeId"),
+            doc.getString("roomCategory"),
+            Boolean.TRUE.equals(doc.getBoolean("booked"))
+        );
+
+        List<ImageVariants> imageVariants = new ArrayList<>();
+        List<Document> variantDocs = (List<Document>) doc.get("imageVariants");
+        if (variantDocs != null) {
+            for (Document variantDoc : variantDocs) {
+                Map<String, String> sizes = new LinkedHashMap<>();
+                Document sizesDoc = variantDoc.get("sizes", Document.class);
+                if (sizesDoc != null) {
+                    sizesDoc.forEach((size, url) -> sizes.put(size, (String) url));
+                }
+                imageVariants.add(new ImageVariants(variantDoc.getString("original"), sizes));
+            }
+        }
+        resolved.setImageVariants(imageVariants.isEmpty() ? null : imageVariants);
+        return resolved;
+    }
+
     /* =========================
        BASIC CRUD
        ========================= */
@@ -1,6 +1,10 @@
 package com.skillstorm.cloudlodge.services;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.stereotype.Service;
@@ -11,6 +15,10 @@ import com.skillstorm.cloudlodge.repositories.RoomTypeRepository;
 @Service
 public class RoomTypeService {
     private final RoomTypeRepository roomTypeRepository;
+
+    // snapshot of every room type keyed by id, loaded with one findAll (null = not loaded)
+    private volatile Map<String, RoomType> cache;
+
     public RoomTypeService(RoomTypeRepository roomTypeRepository) {
         this.roomTypeRepository = roomTypeRepository;
     }
@@ -25,6 +33,23 @@ public class RoomTypeService {
         return roomTypeRepository.findById(id);
     }
 
+    // Batch resolve: every requested id that exists, keyed by id
+    public Map<String, RoomType> getRoomTypesByIds(Collection<String> ids) {
+        Map<String, RoomType> all = cachedRoomTypes();
+        Map<String, RoomType> resolved = new HashMap<>();
+        for (String id : ids) {
+            if (id != null && all.containsKey(id)) {
+                resolved.put(id, all.get(id));
+            }
+        }
+        return resolved;
+    }
+
+    // Drop the cache; called from the create/update/delete endpoints
+    public synchronized void invalidateCache() {
+        cache = null;
+    }
+
     // Create or update room
     public RoomType save(RoomType roomType) {
         return roomTypeRepository.save(roomType);
@@ -34,4 +59,21 @@ public class RoomTypeService {
     public void delete(String id) {
         roomTypeRepository.deleteById(id);
     }
+
+    private Map<String, RoomType> cachedRoomTypes() {
+        Map<String, RoomType> snapshot = cache;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (cache == null) {
+                Map<String, RoomType> loaded = new HashMap<>();
+                for (RoomType roomType : roomTypeRepository.findAll()) {
+                    loaded.put(roomType.getId(), roomType);
+                }
+                cache = Collections.unmodifiableMap(loaded);
+            }
+            return cache;
+        }
+    }
 }
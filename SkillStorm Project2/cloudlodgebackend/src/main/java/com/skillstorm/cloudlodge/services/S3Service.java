@@ -2,43 +2,328 @@ package com.skillstorm.cloudlodge.services;
 
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.util.UriUtils;
 
-import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 
 @Service
 public class S3Service {
+
+    private static final Logger log = LoggerFactory.getLogger(S3Service.class);
+
+    // S3 rejects multipart parts smaller than 5 MB (except the last one)
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
     @Autowired
     private S3Client s3Client;
 
+    @Autowired
+    @Qualifier("s3UploadExecutor")
+    private Executor uploadExecutor;
+
+    @Autowired
+    @Qualifier("s3PartExecutor")
+    private Executor partExecutor;
+
     @Value("${cloud.aws.s3.bucket}")
     private String bucketName;
 
+    // Optional S3-compatible endpoint (ex: MinIO or LocalStack), used for public URLs too
+    @Value("${cloud.aws.s3.endpoint:}")
+    private String endpoint;
 
+    // Files above this size go through multipart upload
+    @Value("${app.s3.multipartThresholdBytes:16777216}")
+    private long multipartThreshold;
+
+    @Value("${app.s3.partSizeBytes:8388608}")
+    private long partSize;
+
+    // Parts of one file in flight at once; also caps the part buffers held in memory per file
+    @Value("${app.s3.partConcurrency:4}")
+    private int partConcurrency;
+
+
+    // Streams the file to S3; nothing is buffered whole on the heap
     public String uploadFile(MultipartFile file, String folder) throws IOException {
         // Generate a unique key for each file
         String key = folder + "/" + UUID.randomUUID() + "_" + file.getOriginalFilename();
+        if (file.getSize() > multipartThreshold) {
+            uploadMultipart(file, key);
+        } else {
+            try (InputStream in = file.getInputStream()) {
+                s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(file.getContentType())
+                        .build(),
+                    RequestBody.fromInputStream(in, file.getSize()));
+            }
+        }
+        // Return the public S3 URL
+        return publicUrl(key);
+    }
+
+    // Upload several files at once on the bounded upload pool; URLs come back in the same order as the files.
+    // Throws RejectedExecutionException when the upload queue is full; files already queued still finish and,
+    // being referenced by nothing, are removed by ImageGarbageCollector.
+    public List<String> uploadFiles(List<MultipartFile> files, String folder) throws IOException {
+        List<CompletableFuture<String>> uploads = new ArrayList<>();
+        for (MultipartFile file : files) {
+            uploads.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return uploadFile(file, folder);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, uploadExecutor));
+        }
+
+        List<String> urls = new ArrayList<>();
+        try {
+            for (CompletableFuture<String> upload : uploads) {
+                urls.add(upload.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw e;
+        }
+        return urls;
+    }
+
+    // Small in-memory payloads (ex: resized images)
+    public String uploadBytes(byte[] data, String key, String contentType) {
         s3Client.putObject(PutObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
-                .contentType(file.getContentType())
+                .contentType(contentType)
                 .build(),
-            RequestBody.fromBytes(file.getBytes()));
-        // Return the public S3 URL
+            RequestBody.fromBytes(data));
+        return publicUrl(key);
+    }
+
+    // Object key behind a URL pointing into our bucket, or null if it is not one of ours.
+    // Besides the current publicUrl format this accepts the other virtual-host and path style forms,
+    // so URLs saved before an endpoint/region change still resolve. Percent-escapes in the path are decoded.
+    public String keyFromUrl(String url) {
+        String path = pathInBucket(url);
+        return path != null ? decodePath(path) : null;
+    }
+
+    // <baseUrl>/images/<key> serving the object out of the local disk cache (ImageController) for keys under
+    // images/; anything else, such as links to other hosts, comes back unchanged
+    public String cachedUrl(String url, String baseUrl) {
+        String key = keyFromUrl(url);
+        if (key == null || !key.startsWith("images/")) return url;
+        return baseUrl + "/images/" + UriUtils.encodePath(key.substring("images/".length()), StandardCharsets.UTF_8);
+    }
+
+    // Key behind either form of image URL clients get: an S3 URL, or a /images/<key> URL from cachedUrl
+    public String imageKey(String url) {
+        String key = keyFromUrl(url);
+        if (key != null || url == null) return key;
+        try {
+            String path = URI.create(url).getRawPath();
+            return path != null && path.startsWith("/images/") ? "images/" + decodePath(path.substring("/images/".length())) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Drop every image naming the same object as one of the given URLs, whichever URL form they use
+    public void removeImages(List<String> images, Collection<String> urls) {
+        Set<String> keys = new HashSet<>();
+        for (String url : urls) {
+            String key = imageKey(url);
+            if (key != null) keys.add(key);
+        }
+        images.removeIf(image -> urls.contains(image) || keys.contains(imageKey(image)));
+    }
+
+    // Every key a URL could stand for: the path as written, percent-decoded, and with '+' read as a space.
+    // The image GC keeps all of them, so an unusually encoded URL keeps its object instead of losing it.
+    public Set<String> candidateKeysFromUrl(String url) {
+        Set<String> keys = new LinkedHashSet<>();
+        String path = pathInBucket(url);
+        if (path == null) return keys;
+        keys.add(path);
+        keys.add(decodePath(path));
+        keys.add(decodePath(path.replace("+", "%20")));
+        return keys;
+    }
+
+    private String pathInBucket(String url) {
+        if (url == null) return null;
+        String prefix = publicUrl("");
+        if (url.startsWith(prefix)) return url.substring(prefix.length());
+
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) return null;
+        int pathStart = url.indexOf('/', schemeEnd + 3);
+        if (pathStart < 0) return null;
+        String host = url.substring(schemeEnd + 3, pathStart);
+        String path = url.substring(pathStart + 1);
+        if (host.startsWith(bucketName + ".s3")) return path;
+        if (path.startsWith(bucketName + "/")) return path.substring(bucketName.length() + 1);
+        return null;
+    }
+
+    // %XX escapes only; a '+' stays a '+', as it does in a URL path
+    private static String decodePath(String path) {
+        if (path.indexOf('%') < 0) return path;
+        try {
+            return URLDecoder.decode(path.replace("+", "%2B"), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return path;
+        }
+    }
+
+    public String publicUrl(String key) {
+        if (endpoint != null && !endpoint.isBlank()) {
+            return endpoint.replaceAll("/+$", "") + "/" + bucketName + "/" + key;
+        }
         return "https://" + bucketName + ".s3.amazonaws.com/" + key;
     }
 
-    public byte[] downloadFile(String key) {
-        ResponseBytes<GetObjectResponse> objectAsBytes = s3Client.getObjectAsBytes(builder -> builder.bucket(bucketName).key(key).build());
-        return objectAsBytes.asByteArray();
+    // Streams the object; callers read what they need and close it (ImageCache keeps a disk copy)
+    public ResponseInputStream<GetObjectResponse> openObject(String key) {
+        return s3Client.getObject(builder -> builder.bucket(bucketName).key(key).build());
+    }
+
+    // Every object under the prefix; pages are fetched lazily as the iterator advances
+    public Iterable<S3Object> listObjects(String prefix) {
+        return s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .build()).contents();
+    }
+
+    // Batch delete (at most 1000 keys per call); returns the keys S3 reported as failed
+    public List<String> deleteObjects(List<String> keys) {
+        List<ObjectIdentifier> ids = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            ids.add(ObjectIdentifier.builder().key(key).build());
+        }
+        DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                .bucket(bucketName)
+                .delete(Delete.builder().objects(ids).quiet(true).build())
+                .build());
+
+        List<String> failed = new ArrayList<>();
+        response.errors().forEach(error -> {
+            log.warn("Could not delete {}: {} {}", error.key(), error.code(), error.message());
+            failed.add(error.key());
+        });
+        return failed;
+    }
+
+    // Read the stream one part at a time and upload up to partConcurrency parts in parallel
+    private void uploadMultipart(MultipartFile file, String key) throws IOException {
+        int chunkSize = (int) Math.max(partSize, MIN_PART_SIZE);
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(file.getContentType())
+                .build()).uploadId();
+
+        Semaphore inFlight = new Semaphore(partConcurrency);
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        try (InputStream in = file.getInputStream()) {
+            int partNumber = 1;
+            while (true) {
+                inFlight.acquire();
+                byte[] chunk = in.readNBytes(chunkSize);
+                if (chunk.length == 0 && partNumber > 1) {
+                    inFlight.release();
+                    break;
+                }
+                int number = partNumber++;
+                parts.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        String eTag = s3Client.uploadPart(UploadPartRequest.builder()
+                                .bucket(bucketName)
+                                .key(key)
+                                .uploadId(uploadId)
+                                .partNumber(number)
+                                .contentLength((long) chunk.length)
+                                .build(),
+                            RequestBody.fromBytes(chunk)).eTag();
+                        return CompletedPart.builder().partNumber(number).eTag(eTag).build();
+                    } finally {
+                        inFlight.release();
+                    }
+                }, partExecutor));
+                if (chunk.length < chunkSize) break;
+            }
+
+            List<CompletedPart> completed = new ArrayList<>();
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completed.add(part.join());
+            }
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                    .build());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(key, uploadId);
+            throw new IOException("Upload interrupted", e);
+        } catch (IOException | RuntimeException e) {
+            abort(key, uploadId);
+            throw e;
+        }
+    }
+
+    private void abort(String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (RuntimeException e) {
+            log.warn("Could not abort multipart upload {} for {}", uploadId, key, e);
+        }
     }
 }
@@ -13,6 +13,7 @@ import com.skillstorm.cloudlodge.models.Payment;
 import com.skillstorm.cloudlodge.models.PaymentIntentRequest;
 import com.skillstorm.cloudlodge.models.Reservation;
 import com.skillstorm.cloudlodge.models.User;
+import com.skillstorm.cloudlodge.models.UserPrincipal;
 import com.skillstorm.cloudlodge.repositories.UserRepository;
 import com.stripe.exception.SignatureVerificationException;
 import com.stripe.exception.StripeException;
@@ -32,8 +33,6 @@ import com.stripe.param.PaymentMethodDetachParams;
 import com.stripe.param.SetupIntentCreateParams;
 import com.stripe.param.PaymentMethodListParams;
 
-import jakarta.servlet.http.HttpServletRequest;
-
 @Service
 public class StripePaymentService {
 
@@ -42,6 +41,8 @@ public class StripePaymentService {
     private final UserRepository userRepository;
     private final ReservationService reservationService;
     private final PaymentService paymentService;
+    private final IncomeRollupService incomeRollupService;
+    private final PrincipalCache principalCache;
 
     @Value("${stripe.publishable.key}")
     private String publishableKey;
@@ -51,10 +52,14 @@ public class StripePaymentService {
 
     public StripePaymentService(UserRepository userRepository,
                                 ReservationService reservationService,
-                                PaymentService paymentService) {
+                                PaymentService paymentService,
+                                IncomeRollupService incomeRollupService,
+                                PrincipalCache principalCache) {
         this.userRepository = userRepository;
         this.reservationService = reservationService;
         this.paymentService = paymentService;
+        this.incomeRollupService = incomeRollupService;
+        this.principalCache = principalCache;
     }
 
     public Map<String, String> getConfig() {
@@ -63,7 +68,7 @@ public class StripePaymentService {
         return resp;
     }
 
-    public Map<String, String> createSetupIntent(User user) throws StripeException {
+    public Map<String, String> createSetupIntent(UserPrincipal user) throws StripeException {
         String customerId = ensureCustomer(user);
         SetupIntentCreateParams params = SetupIntentCreateParams.builder()
                 .setCustomer(customerId)
@@ -76,7 +81,7 @@ public class StripePaymentService {
         return resp;
     }
 
-    public Map<String, String> createPaymentIntent(PaymentIntentRequest request, User user) throws StripeException {
+    public Map<String, String> createPaymentIntent(PaymentIntentRequest request, UserPrincipal user) throws StripeException {
         if (request.getReservationId() == null || request.getReservationId().isBlank()) {
             throw new IllegalArgumentException("reservationId is required");
         }
@@ -123,8 +128,7 @@ public class StripePaymentService {
         payment.setStatus(Payment.Status.PENDING);
         paymentService.save(payment);
 
-        reservation.setStatus(Reservation.Status.PENDING_PAYMENT);
-        reservationService.save(reservation);
+        reservationService.startPaymentHold(reservation);
 
         Map<String, String> resp = new HashMap<>();
         resp.put("clientSecret", intent.getClientSecret());
@@ -132,21 +136,34 @@ public class StripePaymentService {
         return resp;
     }
 
-    public String handleWebhook(String payload, String sigHeader, HttpServletRequest request) throws StripeException {
-        Event event;
+    // Check the Stripe signature and parse the event; nothing is processed here
+    public Event verifyWebhook(String payload, String sigHeader) throws SignatureVerificationException {
+        return Webhook.constructEvent(payload, sigHeader, webhookSecret);
+    }
 
-        try {
-            event = Webhook.constructEvent(payload, sigHeader, webhookSecret);
-        } catch (SignatureVerificationException e) {
-            throw new RuntimeException("Invalid webhook signature");
+    // Key that events touching the same records share, so they can be processed in order
+    public String orderingKey(Event event) {
+        StripeObject stripeObject = event.getDataObjectDeserializer().getObject().orElse(null);
+        if (stripeObject instanceof PaymentIntent intent) {
+            if (intent.getMetadata() != null && intent.getMetadata().get("reservationId") != null) {
+                return intent.getMetadata().get("reservationId");
+            }
+            return intent.getId();
         }
+        if (stripeObject instanceof PaymentMethod pm && pm.getCustomer() != null) {
+            return pm.getCustomer();
+        }
+        return event.getId();
+    }
 
+    // Apply a verified event (called by the webhook inbox workers)
+    public void processEvent(Event event) {
         String type = event.getType();
         EventDataObjectDeserializer dataObjectDeserializer = event.getDataObjectDeserializer();
         StripeObject stripeObject = dataObjectDeserializer.getObject().orElse(null);
 
         if (stripeObject == null) {
-            return "";
+            return;
         }
 
         switch (type) {
@@ -157,75 +174,73 @@ public class StripePaymentService {
                 // ignore unhandled events
             }
         }
-
-        return "";
     }
 
+    // Payment-success transition: one payment upsert, one reservation $set, one rollup write.
+    // Each step can be repeated: the upsert is keyed on the transaction id, confirmPayment is a $set, and the
+    // rollup sync records which flips it applied, so the webhook inbox can retry the whole event if it fails part way.
     private void handlePaymentIntentSucceeded(PaymentIntent intent) {
         log.info("payment_intent.succeeded id={}, pm={}, metadata={}", intent.getId(), intent.getPaymentMethod(), intent.getMetadata());
-        System.out.println("payment_intent.succeeded " + intent.getId() + " pm=" + intent.getPaymentMethod() + " meta=" + intent.getMetadata());
-        Payment payment = paymentService.findByTransactionId(intent.getId()).orElse(new Payment());
-        payment.setTransactionId(intent.getId());
-        payment.setAmount(intent.getAmount() != null ? intent.getAmount() / 100.0 : payment.getAmount());
-        payment.setCurrency(intent.getCurrency());
-        payment.setStatus(Payment.Status.SUCCEEDED);
-
-        if (intent.getMetadata() != null) {
-            String reservationId = intent.getMetadata().get("reservationId");
-            payment.setReservationId(reservationId);
-            Payment savedPayment = paymentService.save(payment);
-            reservationService.findById(reservationId).ifPresent(reservation -> {
-                reservation.setStatus(Reservation.Status.CONFIRMED);
-                if (savedPayment.getId() != null) {
-                    reservation.setPaymentId(savedPayment.getId());
-                }
-                reservationService.save(reservation);
-            });
-
-            boolean savePaymentMethod = Boolean.parseBoolean(intent.getMetadata().getOrDefault("savePaymentMethod", "false"));
-            if (!savePaymentMethod) {
-                log.info("Not saving payment method for intent {} (flag false)", intent.getId());
-                System.out.println("Not saving payment method for intent " + intent.getId() + " flag false");
-            }
-            if (savePaymentMethod && intent.getPaymentMethod() != null) {
-                String userIdFromMeta = intent.getMetadata().get("userId");
-                if (userIdFromMeta != null) {
-                    userRepository.findById(userIdFromMeta).ifPresent(user -> savePaymentMethodForUser(intent, user));
-                }
-
-                reservationService.findById(reservationId).ifPresent(reservation -> {
-                    userRepository.findById(reservation.getUserId()).ifPresent(user -> {
-                        savePaymentMethodForUser(intent, user);
-                    });
-                });
-            } else if (savePaymentMethod && intent.getPaymentMethod() == null) {
-                log.warn("Intent {} requested savePaymentMethod but paymentMethod is null", intent.getId());
-                System.out.println("savePaymentMethod true but pm null for intent " + intent.getId());
-            }
+        String reservationId = intent.getMetadata() != null ? intent.getMetadata().get("reservationId") : null;
+
+        Payment payment = paymentFromIntent(intent, Payment.Status.SUCCEEDED, reservationId);
+        paymentService.upsertByTransactionId(payment);
+        incomeRollupService.sync(payment.getId());
+
+        Reservation reservation = reservationService.confirmPayment(reservationId, payment.getId()).orElse(null);
+        if (reservation != null && reservation.getStatus() != Reservation.Status.CONFIRMED) {
+            // hold expired before the payment landed and the nights were taken since
+            log.error("Payment {} succeeded for reservation {} but its nights are no longer available",
+                    intent.getId(), reservationId);
         }
 
-        if (payment.getId() == null) {
-            paymentService.save(payment);
+        if (intent.getMetadata() == null) return;
+        boolean savePaymentMethod = Boolean.parseBoolean(intent.getMetadata().getOrDefault("savePaymentMethod", "false"));
+        if (!savePaymentMethod) {
+            log.info("Not saving payment method for intent {} (flag false)", intent.getId());
+        } else if (intent.getPaymentMethod() == null) {
+            log.warn("Intent {} requested savePaymentMethod but paymentMethod is null", intent.getId());
+        } else {
+            String userId = intent.getMetadata().get("userId");
+            if (userId == null && reservation != null) {
+                userId = reservation.getUserId();
+            }
+            if (userId != null) {
+                userRepository.findById(userId).ifPresent(user -> savePaymentMethodForUser(intent, user));
+            }
         }
     }
 
     private void handlePaymentIntentFailed(PaymentIntent intent) {
-        Payment payment = paymentService.findByTransactionId(intent.getId()).orElse(new Payment());
+        String reservationId = intent.getMetadata() != null ? intent.getMetadata().get("reservationId") : null;
+
+        Payment payment = paymentFromIntent(intent, Payment.Status.FAILED, reservationId);
+        paymentService.upsertByTransactionId(payment);
+        incomeRollupService.sync(payment.getId());
+
+        // only a reservation still waiting for payment is affected; paid or expired ones are left as they are
+        reservationService.markPaymentFailed(reservationId);
+    }
+
+    // Fields of the payment document that an intent event sets
+    private static Payment paymentFromIntent(PaymentIntent intent, Payment.Status status, String reservationId) {
+        Payment payment = new Payment();
         payment.setTransactionId(intent.getId());
-        payment.setAmount(intent.getAmount() != null ? intent.getAmount() / 100.0 : payment.getAmount());
+        payment.setAmount(intent.getAmount() != null ? intent.getAmount() / 100.0 : null);
         payment.setCurrency(intent.getCurrency());
-        payment.setStatus(Payment.Status.FAILED);
-
-        if (intent.getMetadata() != null) {
-            String reservationId = intent.getMetadata().get("reservationId");
-            payment.setReservationId(reservationId);
-            reservationService.findById(reservationId).ifPresent(reservation -> {
-                reservation.setStatus(Reservation.Status.PENDING_PAYMENT);
-                reservationService.save(reservation);
-            });
-        }
+        payment.setStatus(status);
+        payment.setReservationId(reservationId);
+        return payment;
+    }
 
-        paymentService.save(payment);
+    // Only loads the full user when the principal has no Stripe customer yet
+    private String ensureCustomer(UserPrincipal principal) throws StripeException {
+        if (principal.getStripeCustomerId() != null && !principal.getStripeCustomerId().isBlank()) {
+            return principal.getStripeCustomerId();
+        }
+        User user = userRepository.findById(principal.getId())
+                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+        return ensureCustomer(user);
     }
 
     private String ensureCustomer(User user) throws StripeException {
@@ -240,10 +255,16 @@ public class StripePaymentService {
 
         Customer customer = Customer.create(params);
         user.setStripeCustomerId(customer.getId());
-        userRepository.save(user);
+        saveUser(user);
         return customer.getId();
     }
 
+    // Persist Stripe customer / payment method changes and drop the cached principal
+    private void saveUser(User user) {
+        userRepository.save(user);
+        principalCache.invalidate(user.getId());
+    }
+
     public java.util.List<User.SavedPaymentMethod> syncPaymentMethods(User user) throws StripeException {
         String customerId = ensureCustomer(user);
         PaymentMethodListParams params = PaymentMethodListParams.builder()
@@ -260,7 +281,7 @@ public class StripePaymentService {
             methods.add(saved);
         }
         user.setSavedPaymentMethods(methods);
-        userRepository.save(user);
+        saveUser(user);
         log.info("Synced {} payment methods for user {}", methods.size(), user.getId());
         return methods;
     }
@@ -276,7 +297,7 @@ public class StripePaymentService {
 
         if (user.getSavedPaymentMethods() != null) {
             user.getSavedPaymentMethods().removeIf(pmSaved -> paymentMethodId.equals(pmSaved.getStripePaymentMethodId()));
-            userRepository.save(user);
+            saveUser(user);
         }
     }
 
@@ -331,7 +352,7 @@ public class StripePaymentService {
             saved.setBrand(pm.getCard().getBrand());
             saved.setLast4(pm.getCard().getLast4());
             user.getSavedPaymentMethods().add(saved);
-            userRepository.save(user);
+            saveUser(user);
         } else if (exists) {
             log.info("Payment method {} already stored for user {}", paymentMethodId, user.getId());
         } else {
@@ -0,0 +1,228 @@
+package com.skillstorm.cloudlodge.services;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.skillstorm.cloudlodge.models.StripeWebhookEvent;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import com.stripe.net.ApiResource;
+
+import jakarta.annotation.PreDestroy;
+
+// Stripe webhooks are stored first and processed in the background so the endpoint can answer right away.
+// Events are deduplicated on the Stripe event id. Events for one ordering key (reservation id when known) are
+// applied in the order they arrived: an event is only claimed once every earlier event with its key is processed
+// (or has used up its attempts), which holds across retries and instances. Each key also maps to the same
+// single-threaded worker, so the common case never waits. Events that could not be queued, failed (retried with
+// exponential backoff), were waiting behind an earlier one, or were left behind by a restart are picked up by recover().
+// Processed events expire after 30 days (TTL index on processedAt); ones that used up their attempts are kept.
+@Service
+public class StripeWebhookInbox {
+
+    private static final Logger log = LoggerFactory.getLogger(StripeWebhookInbox.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final StripePaymentService stripePaymentService;
+    private final ThreadPoolExecutor[] workers;
+
+    @Value("${app.stripe.webhookMaxAttempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.stripe.webhookStuckAfterMs:300000}")
+    private long stuckAfterMs;
+
+    // first retry delay, doubled for every further attempt up to webhookRetryMaxMs
+    @Value("${app.stripe.webhookRetryBaseMs:30000}")
+    private long retryBaseMs;
+
+    @Value("${app.stripe.webhookRetryMaxMs:3600000}")
+    private long retryMaxMs;
+
+    public StripeWebhookInbox(MongoTemplate mongoTemplate,
+                              StripePaymentService stripePaymentService,
+                              @Value("${app.stripe.webhookWorkers:4}") int workerCount,
+                              @Value("${app.stripe.webhookQueueCapacity:1000}") int queueCapacity) {
+        this.mongoTemplate = mongoTemplate;
+        this.stripePaymentService = stripePaymentService;
+        this.workers = new ThreadPoolExecutor[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            int index = i;
+            workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity),
+                    task -> new Thread(task, "stripe-webhook-" + index));
+        }
+    }
+
+    // Verify and store the event; returns false if it was a duplicate delivery
+    public boolean accept(String payload, String sigHeader) throws SignatureVerificationException {
+        Event event = stripePaymentService.verifyWebhook(payload, sigHeader);
+
+        StripeWebhookEvent inbound = new StripeWebhookEvent();
+        inbound.setId(event.getId());
+        inbound.setType(event.getType());
+        inbound.setOrderingKey(stripePaymentService.orderingKey(event));
+        inbound.setPayload(payload);
+        inbound.setStatus(StripeWebhookEvent.Status.RECEIVED);
+        inbound.setAttempts(0);
+        inbound.setReceivedAt(Instant.now());
+
+        try {
+            mongoTemplate.insert(inbound);
+        } catch (DuplicateKeyException e) {
+            log.info("Dropping duplicate Stripe event {} ({})", event.getId(), event.getType());
+            return false;
+        }
+
+        dispatch(inbound.getId(), inbound.getOrderingKey());
+        return true;
+    }
+
+    // Requeue events that were never queued or were waiting behind an earlier one, failed and are due for a retry,
+    // or were claimed by a worker that died. Oldest first, so a key's earlier event is queued before its later ones.
+    @Scheduled(fixedDelayString = "${app.stripe.webhookRecoveryIntervalMs:30000}")
+    public void recover() {
+        Instant now = Instant.now();
+        Query query = Query.query(new Criteria().orOperator(
+                Criteria.where("status").is(StripeWebhookEvent.Status.RECEIVED).and("receivedAt").lt(now.minusSeconds(30)),
+                retryDue(now),
+                Criteria.where("status").is(StripeWebhookEvent.Status.PROCESSING).and("claimedAt").lt(now.minusMillis(stuckAfterMs))))
+                .with(Sort.by("receivedAt"))
+                .limit(500);
+        query.fields().include("id", "orderingKey");
+
+        List<StripeWebhookEvent> pending = mongoTemplate.find(query, StripeWebhookEvent.class);
+        for (StripeWebhookEvent event : pending) {
+            dispatch(event.getId(), event.getOrderingKey());
+        }
+        if (!pending.isEmpty()) {
+            log.info("Requeued {} Stripe webhook events", pending.size());
+        }
+    }
+
+    private void dispatch(String eventId, String orderingKey) {
+        ThreadPoolExecutor worker = workers[Math.floorMod(orderingKey != null ? orderingKey.hashCode() : 0, workers.length)];
+        try {
+            worker.execute(() -> process(eventId));
+        } catch (RejectedExecutionException e) {
+            // queue is full; the event stays RECEIVED and recover() will pick it up
+            log.warn("Stripe webhook queue full, deferring event {}", eventId);
+        }
+    }
+
+    private void process(String eventId) {
+        StripeWebhookEvent claimed = claim(eventId);
+        if (claimed == null) return;    // already processed, taken by someone else, or waiting behind an earlier event
+
+        try {
+            Event event = ApiResource.GSON.fromJson(claimed.getPayload(), Event.class);
+            stripePaymentService.processEvent(event);
+            mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(eventId)),
+                    new Update().set("status", StripeWebhookEvent.Status.PROCESSED)
+                            .set("processedAt", Instant.now())
+                            .unset("lastError")
+                            .unset("nextAttemptAt"),
+                    StripeWebhookEvent.class);
+            dispatchNext(claimed.getOrderingKey());
+        } catch (Exception e) {
+            int attempts = (claimed.getAttempts() != null ? claimed.getAttempts() : 0) + 1;
+            log.error("Failed to process Stripe event {} (attempt {})", eventId, attempts, e);
+            mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(eventId)),
+                    new Update().set("status", StripeWebhookEvent.Status.FAILED)
+                            .inc("attempts", 1)
+                            .set("nextAttemptAt", Instant.now().plusMillis(backoffMs(attempts)))
+                            .set("lastError", String.valueOf(e.getMessage())),
+                    StripeWebhookEvent.class);
+            if (attempts >= maxAttempts) {
+                // given up on: it no longer holds back the events after it
+                log.error("Giving up on Stripe event {} after {} attempts", eventId, attempts);
+                dispatchNext(claimed.getOrderingKey());
+            }
+        }
+    }
+
+    // Atomically move the event to PROCESSING so two workers (or instances) never handle it twice.
+    // Returns null if it is not claimable, or if an earlier event with the same key still has to be processed.
+    private StripeWebhookEvent claim(String eventId) {
+        Query lookup = Query.query(Criteria.where("id").is(eventId));
+        lookup.fields().include("id", "orderingKey", "receivedAt");
+        StripeWebhookEvent event = mongoTemplate.findOne(lookup, StripeWebhookEvent.class);
+        if (event == null || waitingBehindEarlier(event)) return null;
+
+        Instant now = Instant.now();
+        Query claimable = Query.query(Criteria.where("id").is(eventId).orOperator(
+                Criteria.where("status").is(StripeWebhookEvent.Status.RECEIVED),
+                retryDue(now),
+                Criteria.where("status").is(StripeWebhookEvent.Status.PROCESSING).and("claimedAt").lt(now.minusMillis(stuckAfterMs))));
+        return mongoTemplate.findAndModify(claimable,
+                new Update().set("status", StripeWebhookEvent.Status.PROCESSING).set("claimedAt", now),
+                FindAndModifyOptions.options().returnNew(true),
+                StripeWebhookEvent.class);
+    }
+
+    // true while an earlier event with the same ordering key is not processed yet and still has attempts left
+    private boolean waitingBehindEarlier(StripeWebhookEvent event) {
+        if (event.getOrderingKey() == null || event.getReceivedAt() == null) return false;
+        Criteria earlier = new Criteria().orOperator(
+                Criteria.where("receivedAt").lt(event.getReceivedAt()),
+                Criteria.where("receivedAt").is(event.getReceivedAt()).and("id").lt(event.getId()));
+        Criteria unfinished = new Criteria().orOperator(
+                Criteria.where("status").in(StripeWebhookEvent.Status.RECEIVED, StripeWebhookEvent.Status.PROCESSING),
+                Criteria.where("status").is(StripeWebhookEvent.Status.FAILED).and("attempts").lt(maxAttempts));
+        return mongoTemplate.exists(
+                Query.query(Criteria.where("orderingKey").is(event.getOrderingKey()).andOperator(earlier, unfinished)),
+                StripeWebhookEvent.class);
+    }
+
+    // Queue the oldest event still waiting on this key, if any, now that the one before it is done
+    private void dispatchNext(String orderingKey) {
+        if (orderingKey == null) return;
+        Query next = Query.query(Criteria.where("orderingKey").is(orderingKey)
+                .and("status").is(StripeWebhookEvent.Status.RECEIVED))
+                .with(Sort.by("receivedAt", "id"));
+        next.fields().include("id", "orderingKey");
+        StripeWebhookEvent event = mongoTemplate.findOne(next, StripeWebhookEvent.class);
+        if (event != null) dispatch(event.getId(), event.getOrderingKey());
+    }
+
+    // FAILED events with attempts left whose backoff has passed
+    private Criteria retryDue(Instant now) {
+        return Criteria.where("status").is(StripeWebhookEvent.Status.FAILED).and("attempts").lt(maxAttempts)
+                .orOperator(Criteria.where("nextAttemptAt").is(null), Criteria.where("nextAttemptAt").lte(now));
+    }
+
+    private long backoffMs(int attempts) {
+        long delay = retryBaseMs << Math.min(attempts - 1, 20);
+        return Math.min(delay, retryMaxMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<Runnable> dropped = new ArrayList<>();
+        for (ThreadPoolExecutor worker : workers) {
+            dropped.addAll(worker.shutdownNow());
+        }
+        // anything not started is still RECEIVED/FAILED in Mongo and is recovered on the next start
+        if (!dropped.isEmpty()) {
+            log.info("Stopped Stripe webhook workers with {} queued events left for recovery", dropped.size());
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.skillstorm.cloudlodge.services;
 
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import org.springframework.stereotype.Service;
 
+import com.skillstorm.cloudlodge.dtos.CursorPage;
 import com.skillstorm.cloudlodge.dtos.UserDTO;
 import com.skillstorm.cloudlodge.models.User;
 import com.skillstorm.cloudlodge.repositories.UserRepository;
@@ -12,8 +15,12 @@ import com.skillstorm.cloudlodge.repositories.UserRepository;
 public class UserService {
 
     private final UserRepository userRepository;
-    public UserService(UserRepository userRepository) {
+    private final PrincipalCache principalCache;
+    private final KeysetPaginator keysetPaginator;
+    public UserService(UserRepository userRepository, PrincipalCache principalCache, KeysetPaginator keysetPaginator) {
         this.userRepository = userRepository;
+        this.principalCache = principalCache;
+        this.keysetPaginator = keysetPaginator;
     }
 
     // Get all users
@@ -21,6 +28,16 @@ public class UserService {
         return userRepository.findAll();
     }
 
+    // Cursor over every user for streaming responses (caller must close the stream)
+    public Stream<User> streamAll() {
+        return userRepository.streamAllBy();
+    }
+
+    // One cursor page of users sorted by createdAt, email or id
+    public CursorPage<User> findPage(String sort, boolean descending, String cursor, Integer limit) {
+        return keysetPaginator.page(User.class, null, sort, Set.of("createdAt", "email"), descending, cursor, limit);
+    }
+
     // Get user by ID
     public Optional<User> findById(String id) {
         return userRepository.findById(id);
@@ -33,12 +50,15 @@ public class UserService {
 
     // Create or update user
     public User save(User user) {
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        principalCache.invalidate(saved.getId());
+        return saved;
     }
 
     // Delete user
     public void delete(String id) {
         userRepository.deleteById(id);
+        principalCache.invalidate(id);
     }
 
     public UserDTO getUserForRole(User user, String role) {
@@ -0,0 +1,99 @@
+package com.skillstorm.cloudlodge.utils;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Arrays;
+
+// Bins amounts into fixed time buckets in a single pass.
+// Bucket boundaries are worked out once up front (in the given zone, so DST days still get the right hours),
+// after that each add() is a binary search plus a primitive array write.
+public final class IncomeHistogram {
+
+    public enum Granularity { HOUR, DAY, WEEK, MONTH }
+
+    private final Granularity granularity;
+    private final long[] starts;      // bucket start times in epoch millis, plus one trailing end boundary
+    private final double[] totals;
+
+    private IncomeHistogram(Granularity granularity, long[] starts) {
+        this.granularity = granularity;
+        this.starts = starts;
+        this.totals = new double[starts.length - 1];
+    }
+
+    // Buckets covering the local dates [from, to) in the given zone.
+    // WEEK buckets start on Monday and MONTH buckets on the 1st, so the outer buckets may reach past the range.
+    public static IncomeHistogram of(Granularity granularity, LocalDate from, LocalDate to, ZoneId zone) {
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new IllegalArgumentException("Histogram range must have from before to");
+        }
+
+        ZonedDateTime end = to.atStartOfDay(zone);
+        ZonedDateTime cursor = switch (granularity) {
+            case HOUR, DAY -> from.atStartOfDay(zone);
+            case WEEK -> from.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay(zone);
+            case MONTH -> from.withDayOfMonth(1).atStartOfDay(zone);
+        };
+
+        long[] starts = new long[16];
+        int size = 0;
+        while (true) {
+            if (size == starts.length) starts = Arrays.copyOf(starts, size * 2);
+            starts[size++] = cursor.toInstant().toEpochMilli();
+            if (!cursor.isBefore(end)) break;
+            cursor = next(granularity, cursor);
+        }
+        return new IncomeHistogram(granularity, Arrays.copyOf(starts, size));
+    }
+
+    // Adds an amount to the bucket containing 'at'; returns false if it falls outside the range
+    public boolean add(Instant at, double amount) {
+        if (at == null) return false;
+        int index = indexOf(at.toEpochMilli());
+        if (index < 0) return false;
+        totals[index] += amount;
+        return true;
+    }
+
+    // Index of the bucket containing the time, or -1 if it is outside the range
+    public int indexOf(long epochMilli) {
+        if (epochMilli < starts[0] || epochMilli >= starts[starts.length - 1]) return -1;
+        int found = Arrays.binarySearch(starts, epochMilli);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    public Granularity getGranularity() { return granularity; }
+
+    public int size() { return totals.length; }
+
+    public Instant bucketStart(int index) { return Instant.ofEpochMilli(starts[index]); }
+
+    // End of the last bucket (exclusive)
+    public Instant end() { return Instant.ofEpochMilli(starts[starts.length - 1]); }
+
+    public double get(int index) { return totals[index]; }
+
+    // Live view of the bucket totals, do not modify
+    public double[] totals() { return totals; }
+
+    public double total() {
+        double sum = 0;
+        for (double value : totals) sum += value;
+        return sum;
+    }
+
+    private static ZonedDateTime next(Granularity granularity, ZonedDateTime cursor) {
+        return switch (granularity) {
+            // plus(1, HOURS) works on the instant timeline, so a 23 or 25 hour DST day gets 23 or 25 buckets
+            case HOUR -> cursor.plus(1, ChronoUnit.HOURS);
+            case DAY -> cursor.toLocalDate().plusDays(1).atStartOfDay(cursor.getZone());
+            case WEEK -> cursor.toLocalDate().plusWeeks(1).atStartOfDay(cursor.getZone());
+            case MONTH -> cursor.toLocalDate().plusMonths(1).atStartOfDay(cursor.getZone());
+        };
+    }
+}
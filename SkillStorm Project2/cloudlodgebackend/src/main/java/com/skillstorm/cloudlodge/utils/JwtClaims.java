@@ -0,0 +1,27 @@
+package com.skillstorm.cloudlodge.utils;
+
+import java.time.Instant;
+
+// The claims we use from a verified token
+public final class JwtClaims {
+
+    private final String userId;
+    private final String role;
+    private final Instant expiresAt;
+
+    public JwtClaims(String userId, String role, Instant expiresAt) {
+        this.userId = userId;
+        this.role = role;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getUserId() { return userId; }
+
+    public String getRole() { return role; }
+
+    public Instant getExpiresAt() { return expiresAt; }
+
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && !now.isBefore(expiresAt);
+    }
+}
@@ -2,13 +2,21 @@ package com.skillstorm.cloudlodge.utils;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 
 @Component
 public class JwtUtils {
@@ -19,9 +27,29 @@ public class JwtUtils {
     @Value("${jwt.expirationMs}")
     private long jwtExpirationMs;
 
-    // Convert string secret to Key object (correct way for HS256)
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+    @Value("${jwt.cacheSize:10000}")
+    private int cacheSize;
+
+    // Built once; the parser is immutable and safe to share between threads
+    private Key signingKey;
+    private JwtParser parser;
+
+    // Recently verified tokens, keyed by SHA-256 of the token so raw tokens are not kept in memory
+    private Map<String, JwtClaims> verified;
+
+    @PostConstruct
+    void init() {
+        // Convert string secret to Key object (correct way for HS256)
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        verified = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JwtClaims> eldest) {
+                return size() > cacheSize;
+            }
+        };
     }
 
     public String generateJwtToken(String userId, String role) {
@@ -30,38 +58,57 @@ public class JwtUtils {
                 .claim("role", role)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationMs))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    public boolean validateJwtToken(String token) {
+    // Verify the token once and return its claims, or empty if it is invalid or expired
+    public Optional<JwtClaims> parseToken(String token) {
+        if (token == null || token.isBlank()) return Optional.empty();
+
+        Instant now = Instant.now();
+        String key = hash(token);
+        synchronized (verified) {
+            JwtClaims cached = verified.get(key);
+            if (cached != null) {
+                if (!cached.isExpired(now)) return Optional.of(cached);
+                verified.remove(key);
+            }
+        }
+
         try {
-            Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token);
-            return true;
-        } catch (JwtException e) {
-            return false;
+            Claims body = parser.parseClaimsJws(token).getBody();
+            Date expiration = body.getExpiration();
+            JwtClaims claims = new JwtClaims(body.getSubject(), body.get("role", String.class),
+                    expiration != null ? expiration.toInstant() : null);
+            synchronized (verified) {
+                verified.put(key, claims);
+            }
+            return Optional.of(claims);
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
         }
     }
 
+    public boolean validateJwtToken(String token) {
+        return parseToken(token).isPresent();
+    }
+
     public String getUserIdFromJwt(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        return parseToken(token).map(JwtClaims::getUserId).orElse(null);
     }
 
     public String getRoleFromJwt(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .get("role", String.class);
+        return parseToken(token).map(JwtClaims::getRole).orElse(null);
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 
 }
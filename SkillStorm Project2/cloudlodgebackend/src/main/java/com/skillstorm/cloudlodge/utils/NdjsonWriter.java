@@ -0,0 +1,69 @@
+package com.skillstorm.cloudlodge.utils;
+
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.http.HttpServletResponse;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.SerializationFeature;
+import tools.jackson.databind.json.JsonMapper;
+
+// Writes rows as newline-delimited JSON (application/x-ndjson), one document per line, straight to the response.
+// Each row goes through a single streaming generator as it comes off the Mongo cursor and is then dropped,
+// so memory stays flat however large the collection is. The mapper is the one Spring MVC uses,
+// so every line is the same JSON the array endpoints return for that row.
+@Component
+public class NdjsonWriter {
+
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private static final Logger log = LoggerFactory.getLogger(NdjsonWriter.class);
+
+    private final ObjectWriter writer;
+
+    // rows between flushes, so clients start receiving lines before the whole result is written
+    @Value("${app.ndjson.flushEvery:500}")
+    private int flushEvery;
+
+    public NdjsonWriter(JsonMapper jsonMapper) {
+        this.writer = jsonMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
+    }
+
+    // Opens the stream, writes every row, then closes it (and the cursor behind it). Returns the number of rows written.
+    // The stream is opened here so a failure to open the cursor gets the same handling as one while reading:
+    // before the first bytes are out it is the usual 500 with an Error header; after that the status can no longer
+    // change, so the body just ends early (and the failure is logged).
+    public long write(Supplier<? extends Stream<?>> rows, HttpServletResponse response) {
+        long count = 0;
+        try (Stream<?> source = rows.get()) {
+            response.setContentType(MEDIA_TYPE);
+            response.setCharacterEncoding("UTF-8");
+            try (JsonGenerator generator = writer.createGenerator(response.getOutputStream())) {
+                Iterator<?> iterator = source.iterator();
+                while (iterator.hasNext()) {
+                    writer.writeValue(generator, iterator.next());
+                    if (++count % Math.max(1, flushEvery) == 0) generator.flush();
+                }
+                if (count > 0) generator.writeRaw('\n');
+            }
+        } catch (Exception e) {
+            log.warn("NDJSON response stopped after {} rows", count, e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+                response.setHeader("Error", "Sorry! We have an internal Error! Please check back later.");
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,144 @@
+package com.skillstorm.cloudlodge.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.mongodb.client.result.DeleteResult;
+import com.skillstorm.cloudlodge.models.Reservation;
+import com.skillstorm.cloudlodge.models.RoomAvailability;
+import com.skillstorm.cloudlodge.models.RoomStay;
+
+class AvailabilityMigrationServiceTest {
+
+    private static final LocalDate JUNE_10 = LocalDate.of(2025, 6, 10);
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulk;
+    private RoomAvailabilityService roomAvailabilityService;
+    private AvailabilityMigrationService migration;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(RoomStay.class))).thenReturn(bulk);
+        when(mongoTemplate.remove(any(Query.class), eq(RoomAvailability.class))).thenReturn(DeleteResult.acknowledged(5));
+        when(mongoTemplate.remove(any(Query.class), eq(RoomStay.class))).thenReturn(DeleteResult.acknowledged(1));
+        roomAvailabilityService = mock(RoomAvailabilityService.class);
+        when(roomAvailabilityService.isIntervalMode()).thenReturn(true);
+        migration = new AvailabilityMigrationService(mongoTemplate, roomAvailabilityService);
+        ReflectionTestUtils.setField(migration, "batchSize", 500);
+    }
+
+    @Test
+    void refusesToRunInNightlyMode() {
+        when(roomAvailabilityService.isIntervalMode()).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> migration.migrateToIntervals(false));
+        verify(mongoTemplate, never()).stream(any(Query.class), eq(RoomAvailability.class));
+    }
+
+    @Test
+    void writesStaysOnlyForReservationsThatStillHoldTheirRows() {
+        when(mongoTemplate.stream(any(Query.class), eq(RoomAvailability.class))).thenReturn(Stream.of(
+                night("a", "r1", JUNE_10, "res1"),
+                night("b", "r1", JUNE_10.plusDays(1), "res1"),
+                night("c", "r1", JUNE_10.plusDays(2), "cancelled"),
+                night("d", "r2", JUNE_10, "res2"),
+                night("e", "r3", JUNE_10, "moved")));
+        // the cancelled reservation is filtered out by the status criteria
+        when(mongoTemplate.find(any(Query.class), eq(Reservation.class)))
+                .thenReturn(List.of(reservation("res1"), reservation("res2"), reservation("moved")));
+        // 'moved' loses its row between the stay being written and the check after it
+        when(mongoTemplate.find(any(Query.class), eq(RoomAvailability.class)))
+                .thenReturn(rows("a", "b", "c", "d", "e"))
+                .thenReturn(rows("a", "b", "d"));
+
+        Map<String, Object> report = migration.migrateToIntervals(true);
+
+        ArgumentCaptor<Query> upserts = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> stays = ArgumentCaptor.forClass(Update.class);
+        verify(bulk, times(3)).upsert(upserts.capture(), stays.capture());
+        List<String> rooms = new ArrayList<>();
+        for (Query upsert : upserts.getAllValues()) {
+            rooms.add((String) upsert.getQueryObject().get("roomUnitId"));
+        }
+        assertEquals(List.of("r1", "r2", "r3"), rooms);
+        assertEquals(JUNE_10.plusDays(2), stays.getAllValues().get(0).getUpdateObject().get("$set", Document.class).get("checkOut"));
+
+        ArgumentCaptor<Query> backedOut = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(backedOut.capture(), eq(RoomStay.class));
+        assertEquals("r3", backedOut.getValue().getQueryObject().get("roomUnitId"));
+        assertEquals("moved", backedOut.getValue().getQueryObject().get("reservationId"));
+
+        assertEquals(5L, report.get("nightlyRows"));
+        assertEquals(2L, report.get("stays"));
+        assertEquals(2L, report.get("skippedStays"));
+        assertEquals(5L, report.get("deletedRows"));
+    }
+
+    @Test
+    void rowsGoneBeforeTheBatchIsWrittenGetNoStay() {
+        when(mongoTemplate.stream(any(Query.class), eq(RoomAvailability.class))).thenReturn(Stream.of(
+                night("a", "r1", JUNE_10, "res1"),
+                night("b", "r1", JUNE_10.plusDays(1), "res1")));
+        when(mongoTemplate.find(any(Query.class), eq(Reservation.class))).thenReturn(List.of(reservation("res1")));
+        // released after its first night was streamed: only one of its rows is left
+        when(mongoTemplate.find(any(Query.class), eq(RoomAvailability.class))).thenReturn(rows("b"));
+
+        Map<String, Object> report = migration.migrateToIntervals(false);
+
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(RoomStay.class));
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(RoomAvailability.class));
+        assertEquals(0L, report.get("stays"));
+        assertEquals(1L, report.get("skippedStays"));
+    }
+
+    private static RoomAvailability night(String id, String roomUnitId, LocalDate date, String reservationId) {
+        RoomAvailability night = new RoomAvailability();
+        night.setId(id);
+        night.setRoomUnitId(roomUnitId);
+        night.setDate(date);
+        night.setReservationId(reservationId);
+        return night;
+    }
+
+    private static List<RoomAvailability> rows(String... ids) {
+        List<RoomAvailability> rows = new ArrayList<>();
+        for (String id : ids) {
+            RoomAvailability row = new RoomAvailability();
+            row.setId(id);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static Reservation reservation(String id) {
+        Reservation reservation = new Reservation();
+        reservation.setId(id);
+        return reservation;
+    }
+}
@@ -0,0 +1,168 @@
+package com.skillstorm.cloudlodge.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+class KeysetPaginatorTest {
+
+    // rows as (price, _id); two rows have no price
+    private static final List<Row> ROWS = List.of(
+            new Row(30, "a"), new Row(null, "b"), new Row(10, "c"), new Row(20, "d"),
+            new Row(10, "e"), new Row(null, "f"), new Row(30, "g"), new Row(20, "h"));
+
+    @Test
+    void cursorRoundTrip() {
+        Date createdAt = Date.from(Instant.parse("2025-06-10T12:34:56.789Z"));
+        ObjectId id = new ObjectId();
+
+        Document position = KeysetPaginator.decode(
+                KeysetPaginator.encode("createdAt", true, createdAt, id), "createdAt", true, Instant.class);
+
+        assertEquals(createdAt, position.get("v"));
+        assertEquals(id, position.get("id"));
+    }
+
+    @Test
+    void cursorRoundTripWithoutSortValue() {
+        String cursor = KeysetPaginator.encode("email", false, null, "u1");
+
+        Document position = KeysetPaginator.decode(cursor, "email", false, String.class);
+
+        assertNull(position.get("v"));
+        assertEquals("u1", position.get("id"));
+    }
+
+    @Test
+    void rejectsCursorForAnotherSort() {
+        String cursor = KeysetPaginator.encode("createdAt", false, new Date(), new ObjectId());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> KeysetPaginator.decode(cursor, "createdAt", true, Instant.class));
+        assertThrows(IllegalArgumentException.class,
+                () -> KeysetPaginator.decode(cursor, "email", false, String.class));
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> KeysetPaginator.decode("not a cursor!", "email", false, String.class));
+    }
+
+    @Test
+    void rejectsOperatorValues() {
+        String value = KeysetPaginator.encode("email", false, new Document("$ne", null), "u1");
+        String id = KeysetPaginator.encode("email", false, "a@example.com", new Document("$gt", ""));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> KeysetPaginator.decode(value, "email", false, String.class));
+        assertThrows(IllegalArgumentException.class,
+                () -> KeysetPaginator.decode(id, "email", false, String.class));
+    }
+
+    @Test
+    void rejectsValueOfTheWrongType() {
+        String text = KeysetPaginator.encode("createdAt", false, "2025-06-10", new ObjectId());
+        String number = KeysetPaginator.encode("email", false, 42, new ObjectId());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> KeysetPaginator.decode(text, "createdAt", false, Instant.class));
+        assertThrows(IllegalArgumentException.class,
+                () -> KeysetPaginator.decode(number, "email", false, String.class));
+    }
+
+    @Test
+    void afterContinuesAscendingOrderWithNullsFirst() {
+        assertPagesContinue(false);
+    }
+
+    @Test
+    void afterContinuesDescendingOrderWithNullsLast() {
+        assertPagesContinue(true);
+    }
+
+    @Test
+    void afterOnIdOnly() {
+        Document position = new Document("v", "d").append("id", "d");
+
+        assertEquals(List.of("e", "f", "g", "h"), matchingIds(KeysetPaginator.after(position, "_id", false).getCriteriaObject()));
+        assertEquals(List.of("a", "b", "c"), matchingIds(KeysetPaginator.after(position, "_id", true).getCriteriaObject()));
+    }
+
+    // For every row as the cursor, the criteria must match exactly the rows after it in (price, _id) order
+    private static void assertPagesContinue(boolean descending) {
+        Comparator<Row> order = Comparator.comparing((Row row) -> row.price, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(row -> row.id);
+        List<Row> sorted = new ArrayList<>(ROWS);
+        sorted.sort(descending ? order.reversed() : order);
+
+        for (int i = 0; i < sorted.size(); i++) {
+            Row last = sorted.get(i);
+            Document criteria = KeysetPaginator.after(new Document("v", last.price).append("id", last.id),
+                    "price", descending).getCriteriaObject();
+
+            List<String> expected = sorted.subList(i + 1, sorted.size()).stream().map(row -> row.id).toList();
+            List<String> actual = new ArrayList<>();
+            for (Row row : sorted) {
+                if (matches(criteria, row)) actual.add(row.id);
+            }
+            assertEquals(expected, actual, "after " + last.price + "/" + last.id + (descending ? " desc" : " asc"));
+        }
+    }
+
+    private static List<String> matchingIds(Document criteria) {
+        List<String> ids = new ArrayList<>();
+        for (Row row : ROWS) {
+            if (matches(criteria, row)) ids.add(row.id);
+        }
+        ids.sort(Comparator.naturalOrder());
+        return ids;
+    }
+
+    // Just enough of Mongo's matching for the criteria after() builds: $or, $lt, $gt, $ne and equality
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static boolean matches(Document criteria, Row row) {
+        for (String key : criteria.keySet()) {
+            Object condition = criteria.get(key);
+            if ("$or".equals(key)) {
+                boolean any = false;
+                for (Object branch : (Collection<?>) condition) {
+                    any |= matches((Document) branch, row);
+                }
+                if (!any) return false;
+                continue;
+            }
+            Comparable actual = "_id".equals(key) ? row.id : row.price;
+            if (condition instanceof Document operators) {
+                for (String operator : operators.keySet()) {
+                    Object value = operators.get(operator);
+                    boolean ok = switch (operator) {
+                        case "$lt" -> actual != null && actual.compareTo(value) < 0;
+                        case "$gt" -> actual != null && actual.compareTo(value) > 0;
+                        case "$ne" -> !Objects.equals(actual, value);
+                        default -> throw new IllegalArgumentException("Unexpected operator " + operator);
+                    };
+                    if (!ok) return false;
+                }
+            } else if (!Objects.equals(actual, condition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Row(Integer price, String id) {
+    }
+}
@@ -0,0 +1,152 @@
+package com.skillstorm.cloudlodge.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.skillstorm.cloudlodge.models.Reservation;
+
+class ReservationIntervalIndexTest {
+
+    // the index drops stays that checked out before today, so these are pinned to a fixed "today"
+    private static final LocalDate TODAY = LocalDate.of(2025, 6, 1);
+    private static final LocalDate JUNE_10 = TODAY.plusDays(9);
+
+    private ReservationIntervalIndex index;
+
+    @BeforeEach
+    void setUp() {
+        // puts and removes only, load() is never called
+        index = new ReservationIntervalIndex(null);
+        setToday(TODAY);
+    }
+
+    @Test
+    void touchingStaysDoNotOverlap() {
+        index.put(reservation("a", "r1", JUNE_10, JUNE_10.plusDays(3)));
+
+        // check-out day of one stay is the check-in day of the next
+        assertFalse(index.overlaps("r1", JUNE_10.plusDays(3), JUNE_10.plusDays(5), null));
+        assertFalse(index.overlaps("r1", JUNE_10.minusDays(2), JUNE_10, null));
+        assertTrue(index.overlaps("r1", JUNE_10.plusDays(2), JUNE_10.plusDays(5), null));
+        assertTrue(index.overlaps("r1", JUNE_10.minusDays(2), JUNE_10.plusDays(1), null));
+    }
+
+    @Test
+    void findsEveryOverlappingStay() {
+        index.put(reservation("long", "r1", JUNE_10, JUNE_10.plusDays(20)));
+        index.put(reservation("short", "r1", JUNE_10.plusDays(2), JUNE_10.plusDays(3)));
+        index.put(reservation("later", "r1", JUNE_10.plusDays(8), JUNE_10.plusDays(9)));
+        index.put(reservation("otherRoom", "r2", JUNE_10, JUNE_10.plusDays(20)));
+
+        // the long stay starts well before the range but still reaches into it
+        assertEquals(Set.of("long", "later"), ids(index.conflicts("r1", JUNE_10.plusDays(5), JUNE_10.plusDays(10), null)));
+        assertEquals(Set.of("long", "short"), ids(index.conflicts("r1", JUNE_10.plusDays(2), JUNE_10.plusDays(3), null)));
+        assertEquals(Set.of(), ids(index.conflicts("r1", JUNE_10.plusDays(20), JUNE_10.plusDays(25), null)));
+    }
+
+    @Test
+    void excludeIdSkipsTheReservationItself() {
+        index.put(reservation("a", "r1", JUNE_10, JUNE_10.plusDays(3)));
+        index.put(reservation("b", "r1", JUNE_10.plusDays(3), JUNE_10.plusDays(5)));
+
+        assertFalse(index.overlaps("r1", JUNE_10.plusDays(1), JUNE_10.plusDays(3), "a"));
+        assertEquals(List.of("b"), index.conflicts("r1", JUNE_10.plusDays(1), JUNE_10.plusDays(4), "a"));
+    }
+
+    @Test
+    void removedAndCancelledStaysNoLongerConflict() {
+        index.put(reservation("a", "r1", JUNE_10, JUNE_10.plusDays(3)));
+        index.put(reservation("b", "r1", JUNE_10.plusDays(1), JUNE_10.plusDays(2)));
+        index.remove("a");
+
+        assertEquals(List.of("b"), index.conflicts("r1", JUNE_10, JUNE_10.plusDays(3), null));
+
+        Reservation cancelled = reservation("b", "r1", JUNE_10.plusDays(1), JUNE_10.plusDays(2));
+        cancelled.setStatus(Reservation.Status.CANCELLED);
+        index.put(cancelled);
+        assertFalse(index.overlaps("r1", JUNE_10, JUNE_10.plusDays(3), null));
+
+        // removing an unknown id is a no-op
+        index.remove("missing");
+    }
+
+    @Test
+    void putMovesAReservation() {
+        index.put(reservation("a", "r1", JUNE_10, JUNE_10.plusDays(3)));
+        index.put(reservation("a", "r2", JUNE_10.plusDays(5), JUNE_10.plusDays(6)));
+
+        assertFalse(index.overlaps("r1", JUNE_10, JUNE_10.plusDays(3), null));
+        assertFalse(index.overlaps("r2", JUNE_10, JUNE_10.plusDays(5), null));
+        assertTrue(index.overlaps("r2", JUNE_10.plusDays(5), JUNE_10.plusDays(6), null));
+    }
+
+    @Test
+    void pastStaysAreNotIndexed() {
+        index.put(reservation("past", "r1", TODAY.minusDays(5), TODAY.minusDays(1)));
+        // checking out today is kept
+        index.put(reservation("leaving", "r1", TODAY.minusDays(2), TODAY));
+
+        assertEquals(List.of("leaving"), index.conflicts("r1", TODAY.minusDays(10), TODAY.plusDays(10), null));
+        assertEquals(List.of(), index.conflicts("r1", TODAY, TODAY.plusDays(10), null));
+    }
+
+    @Test
+    void staysThatHaveEndedAreDroppedWhenTheRoomIsWritten() {
+        index.put(reservation("a", "r1", JUNE_10, JUNE_10.plusDays(3)));
+        index.put(reservation("b", "r1", JUNE_10.plusDays(5), JUNE_10.plusDays(8)));
+        index.put(reservation("other", "r2", JUNE_10, JUNE_10.plusDays(3)));
+
+        // 'a' has checked out by now, 'b' has not; the next write to r1 drops 'a'
+        setToday(JUNE_10.plusDays(4));
+        index.put(reservation("c", "r1", JUNE_10.plusDays(10), JUNE_10.plusDays(11)));
+
+        assertEquals(Set.of("b", "c"), ids(index.conflicts("r1", JUNE_10, JUNE_10.plusDays(20), null)));
+        // rooms that were not written keep theirs until they are
+        assertEquals(List.of("other"), index.conflicts("r2", JUNE_10, JUNE_10.plusDays(3), null));
+        // moving 'a' back into the future still works after it was dropped
+        index.put(reservation("a", "r1", JUNE_10.plusDays(12), JUNE_10.plusDays(13)));
+        assertEquals(List.of("a"), index.conflicts("r1", JUNE_10.plusDays(12), JUNE_10.plusDays(13), null));
+    }
+
+    @Test
+    void coversOnlyRangesFromTodayOnceLoaded() {
+        assertFalse(index.covers(TODAY));
+
+        ReflectionTestUtils.setField(index, "ready", true);
+        assertTrue(index.covers(TODAY));
+        assertTrue(index.covers(JUNE_10));
+        assertFalse(index.covers(TODAY.minusDays(1)));
+        assertFalse(index.covers(null));
+    }
+
+    private void setToday(LocalDate today) {
+        ReflectionTestUtils.setField(index, "clock",
+                Clock.fixed(today.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+    }
+
+    private static Reservation reservation(String id, String roomUnitId, LocalDate checkIn, LocalDate checkOut) {
+        Reservation reservation = new Reservation();
+        reservation.setId(id);
+        reservation.setRoomUnitId(roomUnitId);
+        reservation.setCheckInDate(checkIn);
+        reservation.setCheckOutDate(checkOut);
+        reservation.setStatus(Reservation.Status.CONFIRMED);
+        return reservation;
+    }
+
+    private static Set<String> ids(List<String> conflicts) {
+        return new HashSet<>(conflicts);
+    }
+}
@@ -0,0 +1,101 @@
+package com.skillstorm.cloudlodge.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RoomAvailabilityIndexTest {
+
+    private static final LocalDate JUNE_10 = LocalDate.of(2025, 6, 10);
+
+    private RoomAvailabilityIndex index;
+
+    @BeforeEach
+    void setUp() {
+        // marks and releases only, load() is never called
+        index = new RoomAvailabilityIndex(null, null);
+    }
+
+    @Test
+    void bookedRangeIsEndExclusive() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(3));
+
+        assertTrue(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(1)));
+        assertTrue(index.isBooked("r1", JUNE_10.plusDays(2), JUNE_10.plusDays(3)));
+        // the check-out day and the night before check-in are free
+        assertFalse(index.isBooked("r1", JUNE_10.plusDays(3), JUNE_10.plusDays(5)));
+        assertFalse(index.isBooked("r1", JUNE_10.minusDays(1), JUNE_10));
+        // a range around the stay still hits it
+        assertTrue(index.isBooked("r1", JUNE_10.minusDays(5), JUNE_10.plusDays(10)));
+    }
+
+    @Test
+    void unknownRoomOrEmptyRangeIsFree() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(3));
+
+        assertFalse(index.isBooked("r2", JUNE_10, JUNE_10.plusDays(3)));
+        assertFalse(index.isBooked("r1", JUNE_10.plusDays(1), JUNE_10.plusDays(1)));
+    }
+
+    @Test
+    void releaseClearsOnlyTheGivenNights() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(3));
+        index.releaseRange("r1", JUNE_10.plusDays(1), JUNE_10.plusDays(2));
+
+        assertTrue(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(1)));
+        assertFalse(index.isBooked("r1", JUNE_10.plusDays(1), JUNE_10.plusDays(2)));
+        assertTrue(index.isBooked("r1", JUNE_10.plusDays(2), JUNE_10.plusDays(3)));
+
+        index.releaseRange("r1", JUNE_10, JUNE_10.plusDays(3));
+        assertFalse(index.isBooked("r1", JUNE_10.minusDays(30), JUNE_10.plusDays(30)));
+    }
+
+    @Test
+    void earlierNightMovesTheOriginBack() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(2));
+        index.markRange("r1", JUNE_10.minusDays(40), JUNE_10.minusDays(39));
+
+        assertTrue(index.isBooked("r1", JUNE_10.minusDays(40), JUNE_10.minusDays(39)));
+        assertFalse(index.isBooked("r1", JUNE_10.minusDays(39), JUNE_10));
+        // the nights booked before the rebase are still where they were
+        assertTrue(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(1)));
+        assertTrue(index.isBooked("r1", JUNE_10.plusDays(1), JUNE_10.plusDays(2)));
+        assertFalse(index.isBooked("r1", JUNE_10.plusDays(2), JUNE_10.plusDays(3)));
+    }
+
+    @Test
+    void releaseBeforeTheOriginIsIgnored() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(1));
+        index.releaseRange("r1", JUNE_10.minusDays(5), JUNE_10);
+
+        assertTrue(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(1)));
+        assertFalse(index.isBooked("r1", JUNE_10.minusDays(5), JUNE_10));
+    }
+
+    @Test
+    void rangeCanBeBookedAgainAfterRelease() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(1));
+        index.releaseRange("r1", JUNE_10, JUNE_10.plusDays(1));
+        index.markRange("r1", JUNE_10.minusDays(3), JUNE_10.minusDays(2));
+
+        assertTrue(index.isBooked("r1", JUNE_10.minusDays(3), JUNE_10.minusDays(2)));
+        assertFalse(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(1)));
+    }
+
+    @Test
+    void findBookedRoomIdsReturnsOverlappingRoomsOnly() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(2));
+        index.markRange("r2", JUNE_10.plusDays(2), JUNE_10.plusDays(4));
+        index.markRange("r3", JUNE_10.minusDays(10), JUNE_10.minusDays(8));
+
+        assertEquals(Set.of("r1"), index.findBookedRoomIds(JUNE_10, JUNE_10.plusDays(2)));
+        assertEquals(Set.of("r1", "r2"), index.findBookedRoomIds(JUNE_10.plusDays(1), JUNE_10.plusDays(3)));
+        assertEquals(Set.of(), index.findBookedRoomIds(JUNE_10.plusDays(4), JUNE_10.plusDays(9)));
+    }
+}
@@ -0,0 +1,189 @@
+package com.skillstorm.cloudlodge.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.skillstorm.cloudlodge.models.RoomAvailability;
+import com.skillstorm.cloudlodge.models.RoomStay;
+import com.skillstorm.cloudlodge.repositories.RoomAvailabilityRepository;
+import com.skillstorm.cloudlodge.repositories.RoomStayRepository;
+
+// reserveNights/moveNights in interval storage mode: one roomStays document per reservation
+class RoomAvailabilityServiceIntervalTest {
+
+    private static final LocalDate JUNE_10 = LocalDate.of(2025, 6, 10);
+
+    private MongoTemplate mongoTemplate;
+    private RoomStayRepository roomStayRepository;
+    private RoomAvailabilityIndex index;
+    private RoomAvailabilityService service;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        roomStayRepository = mock(RoomStayRepository.class);
+        when(mongoTemplate.insert(any(RoomStay.class))).thenAnswer(call -> {
+            RoomStay stay = call.getArgument(0);
+            stay.setId("stay1");
+            return stay;
+        });
+        index = new RoomAvailabilityIndex(null, null);
+        service = new RoomAvailabilityService(mock(RoomAvailabilityRepository.class), roomStayRepository, index, mongoTemplate, null);
+        ReflectionTestUtils.setField(service, "storageMode", "interval");
+    }
+
+    @Test
+    void reserveWritesOneStayAndDropsLeftoverRows() {
+        List<RoomAvailability> nights = service.reserveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(3));
+
+        ArgumentCaptor<RoomStay> inserted = ArgumentCaptor.forClass(RoomStay.class);
+        verify(mongoTemplate).insert(inserted.capture());
+        assertEquals("r1", inserted.getValue().getRoomUnitId());
+        assertEquals(JUNE_10, inserted.getValue().getCheckIn());
+        assertEquals(JUNE_10.plusDays(3), inserted.getValue().getCheckOut());
+        assertEquals("res1", inserted.getValue().getReservationId());
+
+        // the stay is returned as one row per night, all carrying the stay id
+        assertEquals(3, nights.size());
+        assertTrue(nights.stream().allMatch(night -> "stay1".equals(night.getId())));
+        assertTrue(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(3)));
+
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removed.capture(), eq(RoomAvailability.class));
+        assertEquals("res1", removed.getValue().getQueryObject().get("reservationId"));
+    }
+
+    @Test
+    void reserveBacksOutWhenAnotherStayOverlaps() {
+        when(mongoTemplate.exists(any(Query.class), eq(RoomStay.class))).thenReturn(true);
+
+        assertThrows(IllegalStateException.class,
+                () -> service.reserveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(3)));
+
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removed.capture(), eq(RoomStay.class));
+        assertEquals("stay1", removed.getValue().getQueryObject().get("id"));
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(RoomAvailability.class));
+        assertFalse(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(3)));
+    }
+
+    @Test
+    void reserveBacksOutWhenNightsAreStillHeldAsRows() {
+        when(mongoTemplate.exists(any(Query.class), eq(RoomAvailability.class))).thenReturn(true);
+
+        assertThrows(IllegalStateException.class,
+                () -> service.reserveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(3)));
+
+        // another reservation's rows on the room, not this one's
+        ArgumentCaptor<Query> held = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).exists(held.capture(), eq(RoomAvailability.class));
+        assertEquals(new Document("$ne", "res1"), held.getValue().getQueryObject().get("reservationId"));
+        verify(mongoTemplate).remove(any(Query.class), eq(RoomStay.class));
+    }
+
+    @Test
+    void reserveRejectsAStayStartingOnATakenNight() {
+        when(mongoTemplate.insert(any(RoomStay.class))).thenThrow(new DuplicateKeyException("roomUnit_checkIn_unique"));
+
+        assertThrows(IllegalStateException.class,
+                () -> service.reserveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(3)));
+        verify(mongoTemplate, never()).exists(any(Query.class), eq(RoomStay.class));
+    }
+
+    @Test
+    void moveRewritesTheStayInPlace() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(3));
+        when(mongoTemplate.findOne(any(Query.class), eq(RoomStay.class))).thenReturn(stay("r1", JUNE_10, JUNE_10.plusDays(3)));
+
+        int moved = service.moveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(3), "r2", JUNE_10.plusDays(1), JUNE_10.plusDays(2));
+
+        assertEquals(1, moved);
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(RoomStay.class));
+        Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+        assertEquals("r2", set.get("roomUnitId"));
+        assertEquals(JUNE_10.plusDays(1), set.get("checkIn"));
+        assertEquals(JUNE_10.plusDays(2), set.get("checkOut"));
+        verify(mongoTemplate, never()).insert(any(RoomStay.class));
+        assertFalse(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(3)));
+        assertTrue(index.isBooked("r2", JUNE_10.plusDays(1), JUNE_10.plusDays(2)));
+    }
+
+    @Test
+    void moveRestoresTheStayWhenTheNewRangeIsTaken() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(3));
+        when(mongoTemplate.findOne(any(Query.class), eq(RoomStay.class))).thenReturn(stay("r1", JUNE_10, JUNE_10.plusDays(3)));
+        when(mongoTemplate.exists(any(Query.class), eq(RoomStay.class))).thenReturn(true);
+
+        assertThrows(IllegalStateException.class,
+                () -> service.moveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(3), "r2", JUNE_10, JUNE_10.plusDays(3)));
+
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), updates.capture(), eq(RoomStay.class));
+        Document restored = updates.getAllValues().get(1).getUpdateObject().get("$set", Document.class);
+        assertEquals("r1", restored.get("roomUnitId"));
+        assertEquals(JUNE_10, restored.get("checkIn"));
+        assertEquals(JUNE_10.plusDays(3), restored.get("checkOut"));
+        assertTrue(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(3)));
+        assertFalse(index.isBooked("r2", JUNE_10, JUNE_10.plusDays(3)));
+    }
+
+    @Test
+    void unchangedMoveWritesNothing() {
+        when(mongoTemplate.findOne(any(Query.class), eq(RoomStay.class))).thenReturn(stay("r1", JUNE_10, JUNE_10.plusDays(3)));
+
+        int moved = service.moveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(3), "r1", JUNE_10, JUNE_10.plusDays(3));
+
+        assertEquals(0, moved);
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(RoomStay.class));
+    }
+
+    @Test
+    void moveWithoutAStayYetReservesOne() {
+        int moved = service.moveNights("res1", null, null, null, "r1", JUNE_10, JUNE_10.plusDays(2));
+
+        assertEquals(1, moved);
+        verify(mongoTemplate).insert(any(RoomStay.class));
+        assertTrue(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(2)));
+    }
+
+    @Test
+    void moveToNoRoomDeletesTheStay() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(3));
+        when(roomStayRepository.deleteByReservationId("res1")).thenReturn(List.of(stay("r1", JUNE_10, JUNE_10.plusDays(3))));
+
+        int moved = service.moveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(3), null, null, null);
+
+        assertEquals(1, moved);
+        verify(roomStayRepository).deleteByReservationId("res1");
+        assertFalse(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(3)));
+    }
+
+    private static RoomStay stay(String roomUnitId, LocalDate checkIn, LocalDate checkOut) {
+        RoomStay stay = new RoomStay(roomUnitId, checkIn, checkOut, "res1");
+        stay.setId("stay1");
+        return stay;
+    }
+}
@@ -0,0 +1,134 @@
+package com.skillstorm.cloudlodge.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.skillstorm.cloudlodge.models.RoomAvailability;
+
+// moveNights in the default nightly storage mode: which nights are upserted and which are removed
+class RoomAvailabilityServiceTest {
+
+    private static final LocalDate JUNE_10 = LocalDate.of(2025, 6, 10);
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulk;
+    private RoomAvailabilityIndex index;
+    private RoomAvailabilityService service;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.ORDERED), eq(RoomAvailability.class))).thenReturn(bulk);
+        index = new RoomAvailabilityIndex(null, null);
+        service = new RoomAvailabilityService(null, null, index, mongoTemplate, null);
+    }
+
+    @Test
+    void shiftOnTheSameRoomMovesOnlyTheEdgeNights() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(3));
+
+        int moved = service.moveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(3),
+                "r1", JUNE_10.plusDays(1), JUNE_10.plusDays(4));
+
+        assertEquals(2, moved);
+        assertEquals(Set.of(JUNE_10.plusDays(3)), upsertedNights("r1", "res1"));
+        assertEquals(Set.of(JUNE_10), removedNights("r1", "res1"));
+        assertFalse(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(1)));
+        assertTrue(index.isBooked("r1", JUNE_10.plusDays(1), JUNE_10.plusDays(4)));
+    }
+
+    @Test
+    void shorterStayOnlyRemovesNights() {
+        int moved = service.moveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(4),
+                "r1", JUNE_10, JUNE_10.plusDays(2));
+
+        assertEquals(2, moved);
+        verify(bulk, never()).upsert(any(Query.class), any(Update.class));
+        assertEquals(Set.of(JUNE_10.plusDays(2), JUNE_10.plusDays(3)), removedNights("r1", "res1"));
+    }
+
+    @Test
+    void roomChangeMovesEveryNight() {
+        index.markRange("r1", JUNE_10, JUNE_10.plusDays(2));
+
+        int moved = service.moveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(2),
+                "r2", JUNE_10, JUNE_10.plusDays(2));
+
+        assertEquals(4, moved);
+        assertEquals(Set.of(JUNE_10, JUNE_10.plusDays(1)), upsertedNights("r2", "res1"));
+        assertEquals(Set.of(JUNE_10, JUNE_10.plusDays(1)), removedNights("r1", "res1"));
+        assertFalse(index.isBooked("r1", JUNE_10, JUNE_10.plusDays(2)));
+        assertTrue(index.isBooked("r2", JUNE_10, JUNE_10.plusDays(2)));
+    }
+
+    @Test
+    void unchangedStayWritesNothing() {
+        int moved = service.moveNights("res1", "r1", JUNE_10, JUNE_10.plusDays(3),
+                "r1", JUNE_10, JUNE_10.plusDays(3));
+
+        assertEquals(0, moved);
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void ensureNightsOnlyAdds() {
+        service.ensureNights("res1", "r1", JUNE_10, JUNE_10.plusDays(2));
+
+        assertEquals(Set.of(JUNE_10, JUNE_10.plusDays(1)), upsertedNights("r1", "res1"));
+        verify(bulk, never()).remove(any(Query.class));
+    }
+
+    // nights upserted for the reservation on the room; fails if any upsert targets something else
+    private Set<LocalDate> upsertedNights(String roomUnitId, String reservationId) {
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(bulk, atLeastOnce()).upsert(queries.capture(), any(Update.class));
+        Set<LocalDate> nights = new HashSet<>();
+        for (Query query : queries.getAllValues()) {
+            Document filter = query.getQueryObject();
+            assertEquals(roomUnitId, filter.get("roomUnitId"));
+            assertEquals(reservationId, filter.get("reservationId"));
+            assertTrue(nights.add((LocalDate) filter.get("date")), "night upserted twice");
+        }
+        return nights;
+    }
+
+    // nights in the single remove for the reservation on the room
+    private Set<LocalDate> removedNights(String roomUnitId, String reservationId) {
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(bulk).remove(queries.capture());
+        Document filter = queries.getValue().getQueryObject();
+        assertEquals(roomUnitId, filter.get("roomUnitId"));
+        assertEquals(reservationId, filter.get("reservationId"));
+        Collection<?> dates = (Collection<?>) filter.get("date", Document.class).get("$in");
+        Set<LocalDate> nights = new HashSet<>();
+        for (Object date : List.copyOf(dates)) {
+            nights.add((LocalDate) date);
+        }
+        return nights;
+    }
+}
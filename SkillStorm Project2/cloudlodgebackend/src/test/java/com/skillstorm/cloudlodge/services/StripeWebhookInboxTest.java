@@ -0,0 +1,293 @@
+package com.skillstorm.cloudlodge.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.skillstorm.cloudlodge.models.StripeWebhookEvent;
+import com.stripe.model.Event;
+import com.stripe.net.ApiResource;
+
+// Ordering and retries of the webhook inbox, against an in-memory stand-in for the stripeWebhookEvents collection
+class StripeWebhookInboxTest {
+
+    private static final String KEY = "res1";
+
+    private final Map<String, StripeWebhookEvent> collection = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+
+    private StripePaymentService stripePaymentService;
+    private StripeWebhookInbox inbox;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MongoTemplate mongoTemplate = mockCollection();
+        stripePaymentService = mock(StripePaymentService.class);
+        when(stripePaymentService.verifyWebhook(anyString(), anyString()))
+                .thenAnswer(call -> ApiResource.GSON.fromJson(call.<String>getArgument(0), Event.class));
+        when(stripePaymentService.orderingKey(any(Event.class))).thenReturn(KEY);
+        doAnswer(call -> {
+            Event event = call.getArgument(0);
+            processed.add(event.getId());
+            if ("evt_1".equals(event.getId()) && failuresLeft.getAndDecrement() > 0) {
+                throw new IllegalStateException("Stripe lookup failed");
+            }
+            return null;
+        }).when(stripePaymentService).processEvent(any(Event.class));
+
+        inbox = new StripeWebhookInbox(mongoTemplate, stripePaymentService, 1, 100);
+        ReflectionTestUtils.setField(inbox, "maxAttempts", 5);
+        ReflectionTestUtils.setField(inbox, "stuckAfterMs", 300000L);
+        ReflectionTestUtils.setField(inbox, "retryBaseMs", 60000L);
+        ReflectionTestUtils.setField(inbox, "retryMaxMs", 3600000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        inbox.shutdown();
+    }
+
+    @Test
+    void laterEventWaitsBehindUnprocessedEarlierOne() throws Exception {
+        // evt_1 arrived first but was never queued (ex: full queue), so only recover() will pick it up
+        store("evt_1", Instant.now().minusSeconds(120));
+
+        assertTrue(inbox.accept(payload("evt_2"), "sig"));
+        awaitIdle();
+        assertEquals(List.of(), processed);
+        assertEquals(StripeWebhookEvent.Status.RECEIVED, collection.get("evt_2").getStatus());
+
+        inbox.recover();
+        awaitIdle();
+        // the first one is processed, then the one that was waiting on it is queued straight away
+        assertEquals(List.of("evt_1", "evt_2"), processed);
+        assertEquals(StripeWebhookEvent.Status.PROCESSED, collection.get("evt_1").getStatus());
+        assertEquals(StripeWebhookEvent.Status.PROCESSED, collection.get("evt_2").getStatus());
+    }
+
+    @Test
+    void laterEventWaitsWhileEarlierOneBacksOffAndRunsAfterTheRetry() throws Exception {
+        failuresLeft.set(1);
+        store("evt_1", Instant.now().minusSeconds(120));
+        inbox.accept(payload("evt_2"), "sig");
+        awaitIdle();
+
+        inbox.recover();
+        awaitIdle();
+        StripeWebhookEvent failed = collection.get("evt_1");
+        assertEquals(StripeWebhookEvent.Status.FAILED, failed.getStatus());
+        assertEquals(1, failed.getAttempts());
+        assertTrue(failed.getNextAttemptAt().isAfter(Instant.now()), "retry is backed off");
+        assertEquals(List.of("evt_1"), processed);
+
+        // still inside the backoff: neither event moves
+        inbox.recover();
+        awaitIdle();
+        assertEquals(List.of("evt_1"), processed);
+        assertEquals(StripeWebhookEvent.Status.RECEIVED, collection.get("evt_2").getStatus());
+
+        // backoff over: the retry succeeds and releases the event behind it
+        failed.setNextAttemptAt(Instant.now().minusSeconds(1));
+        inbox.recover();
+        awaitIdle();
+        assertEquals(List.of("evt_1", "evt_1", "evt_2"), processed);
+        assertEquals(StripeWebhookEvent.Status.PROCESSED, collection.get("evt_2").getStatus());
+    }
+
+    @Test
+    void eventThatUsedUpItsAttemptsNoLongerBlocksTheKey() throws Exception {
+        failuresLeft.set(Integer.MAX_VALUE);
+        StripeWebhookEvent first = store("evt_1", Instant.now().minusSeconds(120));
+        first.setStatus(StripeWebhookEvent.Status.FAILED);
+        first.setAttempts(4);
+
+        inbox.accept(payload("evt_2"), "sig");
+        awaitIdle();
+        assertEquals(List.of(), processed);
+
+        // fifth and last attempt fails; evt_2 goes next
+        inbox.recover();
+        awaitIdle();
+        assertEquals(List.of("evt_1", "evt_2"), processed);
+        assertEquals(5, collection.get("evt_1").getAttempts());
+        assertEquals(StripeWebhookEvent.Status.PROCESSED, collection.get("evt_2").getStatus());
+    }
+
+    private StripeWebhookEvent store(String id, Instant receivedAt) {
+        StripeWebhookEvent event = new StripeWebhookEvent();
+        event.setId(id);
+        event.setType("payment_intent.succeeded");
+        event.setOrderingKey(KEY);
+        event.setPayload(payload(id));
+        event.setStatus(StripeWebhookEvent.Status.RECEIVED);
+        event.setAttempts(0);
+        event.setReceivedAt(receivedAt);
+        collection.put(id, event);
+        return event;
+    }
+
+    private static String payload(String id) {
+        return "{\"id\": \"" + id + "\", \"object\": \"event\", \"type\": \"payment_intent.succeeded\"}";
+    }
+
+    // Wait until the worker has run everything queued so far, including what those tasks queued in turn
+    private void awaitIdle() throws InterruptedException {
+        ThreadPoolExecutor[] workers = (ThreadPoolExecutor[]) ReflectionTestUtils.getField(inbox, "workers");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            boolean idle = true;
+            for (ThreadPoolExecutor worker : workers) {
+                idle &= worker.getCompletedTaskCount() == worker.getTaskCount();
+            }
+            if (idle) return;
+            Thread.sleep(10);
+        }
+        throw new AssertionError("webhook worker did not finish");
+    }
+
+    private MongoTemplate mockCollection() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.insert(any(StripeWebhookEvent.class))).thenAnswer(call -> {
+            StripeWebhookEvent event = call.getArgument(0);
+            collection.put(event.getId(), event);
+            return event;
+        });
+        when(mongoTemplate.find(any(Query.class), eq(StripeWebhookEvent.class)))
+                .thenAnswer(call -> copies(find(call.getArgument(0))));
+        when(mongoTemplate.findOne(any(Query.class), eq(StripeWebhookEvent.class))).thenAnswer(call -> {
+            List<StripeWebhookEvent> found = find(call.getArgument(0));
+            return found.isEmpty() ? null : copy(found.get(0));
+        });
+        when(mongoTemplate.exists(any(Query.class), eq(StripeWebhookEvent.class)))
+                .thenAnswer(call -> !find(call.getArgument(0)).isEmpty());
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(StripeWebhookEvent.class)))
+                .thenAnswer(call -> {
+                    synchronized (collection) {
+                        List<StripeWebhookEvent> found = find(call.getArgument(0));
+                        if (!found.isEmpty()) apply(call.getArgument(1), found.get(0));
+                    }
+                    return null;
+                });
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(StripeWebhookEvent.class))).thenAnswer(call -> {
+                    synchronized (collection) {
+                        List<StripeWebhookEvent> found = find(call.getArgument(0));
+                        if (found.isEmpty()) return null;
+                        apply(call.getArgument(1), found.get(0));
+                        return copy(found.get(0));
+                    }
+                });
+        return mongoTemplate;
+    }
+
+    private List<StripeWebhookEvent> find(Query query) {
+        List<StripeWebhookEvent> found = new ArrayList<>();
+        synchronized (collection) {
+            for (StripeWebhookEvent event : collection.values()) {
+                if (matches(query.getQueryObject(), event)) found.add(event);
+            }
+        }
+        Comparator<StripeWebhookEvent> order = null;
+        for (String field : query.getSortObject().keySet()) {
+            Comparator<StripeWebhookEvent> byField = Comparator.comparing(
+                    event -> (Comparable) get(event, field), Comparator.nullsFirst(Comparator.naturalOrder()));
+            order = order == null ? byField : order.thenComparing(byField);
+        }
+        if (order != null) found.sort(order);
+        return query.getLimit() > 0 && found.size() > query.getLimit() ? found.subList(0, query.getLimit()) : found;
+    }
+
+    // Just enough of Mongo's matching for the inbox queries: $or, $and, $in, $lt, $lte and equality
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static boolean matches(Document criteria, StripeWebhookEvent event) {
+        for (String key : criteria.keySet()) {
+            Object condition = criteria.get(key);
+            if ("$or".equals(key) || "$and".equals(key)) {
+                boolean any = false;
+                boolean all = true;
+                for (Object branch : (Collection<?>) condition) {
+                    boolean match = matches((Document) branch, event);
+                    any |= match;
+                    all &= match;
+                }
+                if ("$or".equals(key) ? !any : !all) return false;
+                continue;
+            }
+            Object actual = get(event, key);
+            if (condition instanceof Document operators) {
+                for (String operator : operators.keySet()) {
+                    Object value = operators.get(operator);
+                    boolean ok = switch (operator) {
+                        case "$lt" -> actual != null && ((Comparable) actual).compareTo(value) < 0;
+                        case "$lte" -> actual != null && ((Comparable) actual).compareTo(value) <= 0;
+                        case "$in" -> ((Collection<?>) value).contains(actual);
+                        default -> throw new IllegalArgumentException("Unexpected operator " + operator);
+                    };
+                    if (!ok) return false;
+                }
+            } else if (!Objects.equals(actual, condition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void apply(UpdateDefinition update, StripeWebhookEvent event) {
+        Document changes = update.getUpdateObject();
+        BeanWrapperImpl target = new BeanWrapperImpl(event);
+        changes.get("$set", Document.class).forEach(target::setPropertyValue);
+        Document increments = changes.get("$inc", Document.class);
+        if (increments != null) {
+            increments.forEach((field, by) -> target.setPropertyValue(field,
+                    ((Integer) target.getPropertyValue(field)) + ((Number) by).intValue()));
+        }
+        Document unsets = changes.get("$unset", Document.class);
+        if (unsets != null) {
+            unsets.keySet().forEach(field -> target.setPropertyValue(field, null));
+        }
+    }
+
+    private static Object get(StripeWebhookEvent event, String field) {
+        return new BeanWrapperImpl(event).getPropertyValue(field);
+    }
+
+    private static StripeWebhookEvent copy(StripeWebhookEvent event) {
+        StripeWebhookEvent copy = new StripeWebhookEvent();
+        BeanUtils.copyProperties(event, copy);
+        return copy;
+    }
+
+    private static List<StripeWebhookEvent> copies(List<StripeWebhookEvent> events) {
+        return events.stream().map(StripeWebhookInboxTest::copy).toList();
+    }
+}
@@ -0,0 +1,89 @@
+package com.skillstorm.cloudlodge.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.Test;
+
+class IncomeHistogramTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    @Test
+    void bucketStartIsInclusiveAndEndIsExclusive() {
+        IncomeHistogram daily = IncomeHistogram.of(IncomeHistogram.Granularity.DAY,
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 4), ZoneOffset.UTC);
+        assertEquals(3, daily.size());
+
+        Instant secondDay = Instant.parse("2024-01-02T00:00:00Z");
+        assertEquals(1, daily.indexOf(secondDay.toEpochMilli()));
+        assertEquals(0, daily.indexOf(secondDay.toEpochMilli() - 1));
+        assertEquals(2, daily.indexOf(Instant.parse("2024-01-03T23:59:59.999Z").toEpochMilli()));
+
+        assertFalse(daily.add(Instant.parse("2024-01-04T00:00:00Z"), 10.0));
+        assertFalse(daily.add(Instant.parse("2023-12-31T23:59:59.999Z"), 10.0));
+        assertFalse(daily.add(null, 10.0));
+        assertEquals(0.0, daily.total());
+    }
+
+    @Test
+    void addsAmountsToTheirBucket() {
+        IncomeHistogram daily = IncomeHistogram.of(IncomeHistogram.Granularity.DAY,
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 4), ZoneOffset.UTC);
+        assertTrue(daily.add(Instant.parse("2024-01-01T00:00:00Z"), 5.0));
+        assertTrue(daily.add(Instant.parse("2024-01-01T23:00:00Z"), 2.5));
+        assertTrue(daily.add(Instant.parse("2024-01-03T12:00:00Z"), 1.0));
+
+        assertEquals(7.5, daily.get(0));
+        assertEquals(0.0, daily.get(1));
+        assertEquals(1.0, daily.get(2));
+        assertEquals(8.5, daily.total());
+    }
+
+    @Test
+    void dayBoundariesFollowTheZone() {
+        IncomeHistogram daily = IncomeHistogram.of(IncomeHistogram.Granularity.DAY,
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 2), NEW_YORK);
+        assertEquals(Instant.parse("2024-01-01T05:00:00Z"), daily.bucketStart(0));
+        assertEquals(Instant.parse("2024-01-02T05:00:00Z"), daily.end());
+        assertEquals(-1, daily.indexOf(Instant.parse("2024-01-01T04:59:59Z").toEpochMilli()));
+    }
+
+    @Test
+    void hourBucketsCoverShortAndLongDstDays() {
+        assertEquals(23, IncomeHistogram.of(IncomeHistogram.Granularity.HOUR,
+                LocalDate.of(2024, 3, 10), LocalDate.of(2024, 3, 11), NEW_YORK).size());
+        assertEquals(25, IncomeHistogram.of(IncomeHistogram.Granularity.HOUR,
+                LocalDate.of(2024, 11, 3), LocalDate.of(2024, 11, 4), NEW_YORK).size());
+    }
+
+    @Test
+    void weekAndMonthBucketsReachBackToTheirStart() {
+        // 2024-01-03 is a Wednesday
+        IncomeHistogram weekly = IncomeHistogram.of(IncomeHistogram.Granularity.WEEK,
+                LocalDate.of(2024, 1, 3), LocalDate.of(2024, 1, 10), ZoneOffset.UTC);
+        assertEquals(2, weekly.size());
+        assertEquals(Instant.parse("2024-01-01T00:00:00Z"), weekly.bucketStart(0));
+        assertEquals(Instant.parse("2024-01-15T00:00:00Z"), weekly.end());
+
+        IncomeHistogram monthly = IncomeHistogram.of(IncomeHistogram.Granularity.MONTH,
+                LocalDate.of(2024, 1, 15), LocalDate.of(2024, 3, 1), ZoneOffset.UTC);
+        assertEquals(2, monthly.size());
+        assertEquals(Instant.parse("2024-01-01T00:00:00Z"), monthly.bucketStart(0));
+        assertEquals(Instant.parse("2024-02-01T00:00:00Z"), monthly.bucketStart(1));
+    }
+
+    @Test
+    void rejectsEmptyRange() {
+        LocalDate day = LocalDate.of(2024, 1, 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> IncomeHistogram.of(IncomeHistogram.Granularity.DAY, day, day, ZoneOffset.UTC));
+    }
+}